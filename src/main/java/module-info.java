@@ -1,5 +1,6 @@
 module org.cryptomator.jsmb {
 	requires org.slf4j;
+	requires java.management;
 	requires static org.jetbrains.annotations;
 
 	// provides java.security.Provider with org.cryptomator.jsmb.ntlmv2.LegacyCryptoProvider; // only required, if we want to find the provider by name
@@ -0,0 +1,120 @@
+package org.cryptomator.jsmb;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of connections accepted by a server.
+ * <p>
+ * Each accepted connection counts as <em>unauthenticated</em> until a session has been established successfully. New connections are refused
+ * while either limit is reached, so that e.g. a reconnect storm can not starve clients that are already connected.
+ */
+class AdmissionControl {
+
+	private final int maxConnections;
+	private final int maxUnauthenticated;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger unauthenticated = new AtomicInteger();
+	private final AtomicLong refused = new AtomicLong();
+	private volatile boolean closed;
+	private volatile boolean suspended;
+
+	/**
+	 * @param maxConnections Maximum number of open connections
+	 * @param maxUnauthenticated Maximum number of open connections without an established session
+	 */
+	public AdmissionControl(int maxConnections, int maxUnauthenticated) {
+		this.maxConnections = maxConnections;
+		this.maxUnauthenticated = maxUnauthenticated;
+	}
+
+	/**
+	 * Attempts to admit a new connection.
+	 * @return A permit that must be closed when the connection is closed, or {@code null} if the connection must be refused
+	 */
+	public Permit tryAdmit() {
+		if (closed || suspended || !tryIncrement(connections, maxConnections)) {
+			refused.incrementAndGet();
+			return null;
+		}
+		if (!tryIncrement(unauthenticated, maxUnauthenticated)) {
+			connections.decrementAndGet();
+			refused.incrementAndGet();
+			return null;
+		}
+		return new Permit();
+	}
+
+	private static boolean tryIncrement(AtomicInteger counter, int max) {
+		int current;
+		do {
+			current = counter.get();
+			if (current >= max) {
+				return false;
+			}
+		} while (!counter.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	/**
+	 * Temporarily refuses new connections, e.g. under memory pressure.
+	 * @param suspended Whether to refuse new connections
+	 */
+	public void suspend(boolean suspended) {
+		this.suspended = suspended;
+	}
+
+	/**
+	 * Refuses all further connections, e.g. during shutdown.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	public int connections() {
+		return connections.get();
+	}
+
+	public int unauthenticated() {
+		return unauthenticated.get();
+	}
+
+	/**
+	 * @return The total number of connections refused so far
+	 */
+	public long refused() {
+		return refused.get();
+	}
+
+	/**
+	 * Occupies a slot of an admitted connection.
+	 */
+	class Permit implements AutoCloseable {
+
+		private final AtomicBoolean authenticated = new AtomicBoolean();
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private Permit() {
+		}
+
+		/**
+		 * Frees the connection's slot among unauthenticated connections. Subsequent invocations have no effect.
+		 */
+		public void authenticated() {
+			if (authenticated.compareAndSet(false, true)) {
+				unauthenticated.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				if (authenticated.compareAndSet(false, true)) {
+					unauthenticated.decrementAndGet();
+				}
+				connections.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package org.cryptomator.jsmb;
+
+import java.nio.channels.SocketChannel;
+
+/**
+ * Runs each connection on a dedicated virtual thread using blocking I/O.
+ *
+ * @see TransportMode#THREAD_PER_CONNECTION
+ */
+class BlockingTransport implements Transport {
+
+	private final TcpServer server;
+
+	public BlockingTransport(TcpServer server) {
+		this.server = server;
+	}
+
+	@Override
+	public void serve(SocketChannel channel, AdmissionControl.Permit permit) {
+		server.executor.execute(new TcpConnection(server, channel, permit, false));
+	}
+
+	@Override
+	public void close() {
+		// no-op, connections are terminated with the server's executor
+	}
+}
@@ -0,0 +1,117 @@
+package org.cryptomator.jsmb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single selector thread, that performs non-blocking I/O on behalf of its registered {@link EventLoopConnection}s.
+ * <p>
+ * All interactions with the selector and the connections' I/O state happen on this thread. Other threads can submit tasks via {@link #execute(Runnable)}.
+ */
+class EventLoop implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(EventLoop.class);
+
+	private final Selector selector;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private Thread thread;
+
+	private EventLoop(Selector selector) {
+		this.selector = selector;
+	}
+
+	public static EventLoop start(String name) throws IOException {
+		var eventLoop = new EventLoop(Selector.open());
+		eventLoop.thread = Thread.ofPlatform().name(name).daemon().start(eventLoop);
+		return eventLoop;
+	}
+
+	/**
+	 * Registers a non-blocking channel with this event loop and starts reading from it.
+	 * @param channel The channel
+	 * @param connection The connection state associated with the channel
+	 */
+	public void register(SocketChannel channel, EventLoopConnection connection) {
+		execute(() -> {
+			try {
+				connection.registered(channel.register(selector, SelectionKey.OP_READ, connection));
+			} catch (IOException e) {
+				LOG.error("Failed to register channel", e);
+				connection.close();
+			}
+		});
+	}
+
+	/**
+	 * Schedules the given task to be run on the event loop thread.
+	 * @param task The task
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		if (Thread.currentThread() != thread) {
+			selector.wakeup();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!Thread.interrupted() && selector.isOpen()) {
+				selector.select(this::processKey);
+				runTasks();
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			LOG.debug("Event loop terminated", e);
+		}
+	}
+
+	private void processKey(SelectionKey key) {
+		var connection = (EventLoopConnection) key.attachment();
+		try {
+			if (key.isValid() && key.isWritable()) {
+				connection.onWritable();
+			}
+			if (key.isValid() && key.isReadable()) {
+				connection.onReadable();
+			}
+		} catch (RuntimeException e) {
+			LOG.error("Unexpected exception on connection", e);
+			connection.close();
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				LOG.error("Unexpected exception in event loop task", e);
+			}
+		}
+	}
+
+	/**
+	 * Closes all registered connections and terminates the event loop thread.
+	 */
+	public void close() {
+		execute(() -> {
+			for (var key : selector.keys()) {
+				((EventLoopConnection) key.attachment()).close();
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close selector", e);
+			}
+		});
+	}
+}
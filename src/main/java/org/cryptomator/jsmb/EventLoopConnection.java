@@ -0,0 +1,209 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.common.MalformedMessageException;
+import org.cryptomator.jsmb.common.SMBMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A connection served by an {@link EventLoop}.
+ * <p>
+ * The event loop thread decodes the transport frames. As soon as a complete message is available, it is processed on a virtual thread, as
+ * decided by the {@link RequestScheduler}. While a message can not be admitted, reading is suspended. Responses are handed back to the event
+ * loop, which writes them as soon as the socket is writable. Reading is also suspended while the client doesn't read its responses. Hence, an
+ * idle connection does not occupy any thread or receive buffer, and a slow client does not cause unbounded buffering.
+ */
+class EventLoopConnection {
+
+	private static final Logger LOG = LoggerFactory.getLogger(EventLoopConnection.class);
+
+	private final TcpServer server;
+	private final EventLoop eventLoop;
+	private final SocketChannel channel;
+	private final ProtocolHandler protocolHandler;
+	private final RequestScheduler scheduler;
+	private final OutboundQueue outbound;
+	private final FrameDecoder decoder;
+	private SelectionKey key;
+	private boolean admissionPending;
+	private boolean congested;
+	private boolean closeAfterFlush;
+
+	public EventLoopConnection(TcpServer server, EventLoop eventLoop, SocketChannel channel, AdmissionControl.Permit permit) {
+		this.server = server;
+		this.eventLoop = eventLoop;
+		this.channel = channel;
+		this.decoder = new FrameDecoder(server.bufferPool, FrameDecoder.DEFAULT_CHUNK_SIZE, server.maxFrameSize(), server.memoryMonitor::acceptsLargeRequests);
+		this.outbound = new OutboundQueue(server.config.maxQueuedResponseBytes());
+		this.protocolHandler = new ProtocolHandler(server, permit, () -> eventLoop.execute(this::closeAfterFlush), () -> eventLoop.execute(this::close), false, Transport.isLocalPeer(channel));
+		this.scheduler = new RequestScheduler(server.executor, server.config.pipelining(), server.config.maxRequestsPerConnection());
+	}
+
+	void registered(SelectionKey key) {
+		this.key = key;
+	}
+
+	/**
+	 * Reads as much as available and dispatches all complete messages.
+	 * Invoked on the event loop thread.
+	 */
+	void onReadable() {
+		try {
+			// see SMB1 https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb/f906c680-330c-43ae-9a71-f854e24aeee6
+			// see SMB2 https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/1dfacde4-b5c7-4494-8a14-a09d3ab4cc83
+			if (decoder.fill(channel) == -1) {
+				throw new EOFException();
+			}
+			if (!dispatchBufferedFrames()) {
+				admissionPending = true;
+				updateInterestOps();
+			}
+		} catch (EOFException e) {
+			LOG.debug("Connection closed");
+			close();
+		} catch (IOException e) {
+			LOG.error("Exception while reading packet", e);
+			close();
+} catch (RejectedExecutionException e) {
+			LOG.debug("Executor shut down, closing connection");
+			close();
+		}
+	}
+
+	/**
+	 * Determines protocol and handles each buffered message, until a message can not be admitted immediately.
+	 * @return {@code true} if all buffered messages have been dispatched
+	 * @throws ProtocolException If a transport header is invalid
+	 * @throws RejectedExecutionException If the executor has been shut down
+	 */
+	private boolean dispatchBufferedFrames() throws ProtocolException {
+		FrameDecoder.Frame frame;
+		while ((frame = decoder.poll()) != null) {
+			var f = frame;
+			try {
+				if (!scheduler.dispatchNonBlocking(f.segment(), () -> process(f), () -> eventLoop.execute(this::resumeReading))) {
+					return false;
+				}
+			} catch (RejectedExecutionException e) {
+				f.close();
+				throw e;
+			}
+		}
+		decoder.trim();
+		return true;
+	}
+
+	private void process(FrameDecoder.Frame frame) {
+		try (frame) {
+			if (frame.isTruncated()) {
+				protocolHandler.reject(frame.segment().asReadOnly(), this::writeResponse);
+			} else {
+				protocolHandler.handle(frame.segment().asReadOnly(), this::writeResponse);
+			}
+		} catch (MalformedMessageException e) {
+			LOG.error("Exception while reading packet", e);
+			eventLoop.execute(this::close);
+		} catch (RuntimeException e) {
+			LOG.error("Exception while processing packet", e);
+			eventLoop.execute(this::close);
+		}
+	}
+
+	private void resumeReading() {
+		if (key.isValid() && !closeAfterFlush) {
+			try {
+				admissionPending = !dispatchBufferedFrames();
+				updateInterestOps();
+			} catch (ProtocolException e) {
+				LOG.error("Exception while reading packet", e);
+				close();
+} catch (RejectedExecutionException e) {
+				LOG.debug("Executor shut down, closing connection");
+				close();
+			}
+		}
+	}
+
+	private void writeResponse(SMBMessage response) {
+		var buffers = FrameEncoder.encode(ByteBuffer.allocate(FrameEncoder.TRANSPORT_HEADER_SIZE), response);
+		eventLoop.execute(() -> {
+			outbound.add(buffers);
+			if (outbound.isCongested()) {
+				congested = true;
+			}
+			onWritable();
+		});
+	}
+
+	/**
+	 * Writes all pending responses at once, as far as the socket's send buffer permits.
+	 * Invoked on the event loop thread.
+	 */
+	void onWritable() {
+		try {
+			outbound.flush(channel);
+			if (congested && outbound.isDrained()) {
+				congested = false;
+			}
+			if (closeAfterFlush && outbound.isEmpty()) {
+				close();
+			} else {
+				updateInterestOps();
+			}
+		} catch (ClosedChannelException e) {
+			LOG.debug("Connection closed before writing response");
+			close();
+		} catch (IOException e) {
+			LOG.error("Exception while writing response", e);
+			close();
+		}
+	}
+
+	/**
+	 * Reads while neither waiting for admission of a message nor for the client to read its responses, and writes while responses are pending.
+	 */
+	private void updateInterestOps() {
+		if (!key.isValid()) {
+			return;
+		}
+		boolean read = !admissionPending && !congested && !closeAfterFlush;
+		boolean write = !outbound.isEmpty();
+		key.interestOps((read ? SelectionKey.OP_READ : 0) | (write ? SelectionKey.OP_WRITE : 0));
+	}
+
+	/**
+	 * Stops reading further requests and closes the connection as soon as all pending responses have been written.
+	 * Invoked on the event loop thread.
+	 */
+	void closeAfterFlush() {
+		closeAfterFlush = true;
+		if (outbound.isEmpty()) {
+			close();
+		} else {
+			updateInterestOps();
+		}
+	}
+
+	void close() {
+		protocolHandler.close();
+		outbound.close();
+		decoder.close();
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOG.warn("Failed to close channel", e);
+		}
+	}
+}
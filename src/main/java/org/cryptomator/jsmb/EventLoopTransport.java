@@ -0,0 +1,39 @@
+package org.cryptomator.jsmb;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multiplexes all connections on a fixed number of {@link EventLoop}s.
+ *
+ * @see TransportMode#EVENT_LOOP
+ */
+class EventLoopTransport implements Transport {
+
+	private final TcpServer server;
+	private final EventLoop[] eventLoops;
+	private final AtomicInteger next = new AtomicInteger();
+
+	public EventLoopTransport(TcpServer server, int threads) throws IOException {
+		this.server = server;
+		this.eventLoops = new EventLoop[threads];
+		for (int i = 0; i < threads; i++) {
+			eventLoops[i] = EventLoop.start("SMB Event Loop " + i);
+		}
+	}
+
+	@Override
+	public void serve(SocketChannel channel, AdmissionControl.Permit permit) throws IOException {
+		channel.configureBlocking(false);
+		var eventLoop = eventLoops[Math.floorMod(next.getAndIncrement(), eventLoops.length)];
+		eventLoop.register(channel, new EventLoopConnection(server, eventLoop, channel, permit));
+	}
+
+	@Override
+	public void close() {
+		for (var eventLoop : eventLoops) {
+			eventLoop.close();
+		}
+	}
+}
@@ -0,0 +1,293 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.smb2.PacketHeader;
+import org.cryptomator.jsmb.smb2.TransferSizePolicy;
+import org.cryptomator.jsmb.util.BufferPool;
+import org.cryptomator.jsmb.util.Layouts;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes Direct TCP transport frames from a byte stream, reading as many bytes per call as fit into a pooled chunk buffer.
+ * <p>
+ * Frames that are completely contained in a chunk are handed out as slices of that chunk, without copying. A chunk is returned to the pool
+ * once the decoder moved on to the next chunk and all frames sliced from it have been closed. Frames exceeding the chunk size are read into
+ * a dedicated buffer, unless they are rejected due to memory pressure. Of a rejected frame, only the beginning is handed out as a
+ * {@link Frame#isTruncated() truncated} frame, so the request can be answered with an error, while the remainder is skipped.
+ * <p>
+ * The transport header is validated before any buffer is allocated for a frame: Its first byte must be zero and the frame must not exceed
+ * the maximum frame size. Otherwise, the stream can not be decoded any further and the connection should be closed.
+ * <p>
+ * Not thread-safe, meant to be used by the single thread reading from a connection. Frames may be processed and closed on any thread.
+ *
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/1dfacde4-b5c7-4494-8a14-a09d3ab4cc83">Transport</a>
+ * @see FrameEncoder
+ */
+class FrameDecoder implements AutoCloseable {
+
+	static final int DEFAULT_CHUNK_SIZE = 1 << 16; // 64 KiB
+	static final int MAX_FRAME_OVERHEAD = 1 << 16; // allowed in addition to the max transfer size, e.g. for headers of compounded requests
+
+	private final BufferPool bufferPool;
+	private final int chunkSize;
+	private final int maxFrameSize;
+	private final BooleanSupplier acceptLargeFrames;
+	private Chunk chunk;
+	private int readPos;
+	private int writePos;
+	private BufferPool.Lease largeFrame;
+	private ByteBuffer largeFrameBuffer;
+	private int skip; // remaining bytes of a rejected frame
+
+	public FrameDecoder(BufferPool bufferPool, int chunkSize) {
+		this(bufferPool, chunkSize, TransferSizePolicy.MAX_TRANSFER_SIZE + MAX_FRAME_OVERHEAD, () -> true);
+	}
+
+	/**
+	 * @param bufferPool The pool to lease buffers from
+	 * @param chunkSize The size of buffers used for reading, also the largest frame size that does not require a dedicated buffer
+	 * @param maxFrameSize The largest frame size accepted, excluding the transport header
+	 * @param acceptLargeFrames Whether a dedicated buffer may currently be allocated for a frame exceeding the chunk size
+	 */
+	public FrameDecoder(BufferPool bufferPool, int chunkSize, int maxFrameSize, BooleanSupplier acceptLargeFrames) {
+		this.bufferPool = bufferPool;
+		this.chunkSize = chunkSize;
+		this.maxFrameSize = maxFrameSize;
+		this.acceptLargeFrames = acceptLargeFrames;
+	}
+
+	/**
+	 * Blocks until the next frame has been received.
+	 * @param channel A channel in blocking mode
+	 * @return The next frame, which must be closed after processing
+	 * @throws EOFException If the channel reached end-of-stream
+	 * @throws IOException If reading fails
+	 */
+	public Frame next(ReadableByteChannel channel) throws IOException {
+		Frame frame;
+		while ((frame = poll()) == null) {
+			if (fill(channel) == -1) {
+				throw new EOFException();
+			}
+		}
+		return frame;
+	}
+
+	/**
+	 * Reads once from the channel, as many bytes as available and fit into the buffer.
+	 * @param channel The channel
+	 * @return The number of bytes read, possibly zero, or {@code -1} if the channel reached end-of-stream
+	 * @throws ProtocolException If the transport header of the pending frame is invalid
+	 * @throws IOException If reading fails
+	 */
+	public int fill(ReadableByteChannel channel) throws IOException {
+		if (largeFrame != null) {
+			return channel.read(largeFrameBuffer);
+		}
+		prepareChunk();
+		int n = channel.read(chunk.buffer.limit(chunkSize).position(writePos));
+		if (n > 0) {
+			writePos += n;
+		}
+		return n;
+	}
+
+	/**
+	 * Makes sure the remainder of the chunk can hold the rest of the pending frame.
+	 */
+	private void prepareChunk() throws ProtocolException {
+		if (chunk == null) {
+			chunk = new Chunk(bufferPool.lease(chunkSize));
+			readPos = writePos = 0;
+			return;
+		}
+		int available = writePos - readPos;
+		if (available == 0 && chunk.isExclusive()) {
+			readPos = writePos = 0; // reuse chunk
+			return;
+		}
+		int required = available >= FrameEncoder.TRANSPORT_HEADER_SIZE ? FrameEncoder.TRANSPORT_HEADER_SIZE + frameSize() : FrameEncoder.TRANSPORT_HEADER_SIZE;
+		if (required > chunkSize) { // larger frames are handled by poll(), which needs their packet header in case they get rejected
+			required = FrameEncoder.TRANSPORT_HEADER_SIZE + PacketHeader.STRUCTURE_SIZE;
+		}
+		if (readPos + required > chunkSize) {
+			// move partial frame to a new chunk:
+			var newChunk = new Chunk(bufferPool.lease(chunkSize));
+			MemorySegment.copy(chunk.segment, readPos, newChunk.segment, 0, available);
+			chunk.release();
+			chunk = newChunk;
+			readPos = 0;
+			writePos = available;
+		}
+	}
+
+	/**
+	 * Extracts the next frame from the bytes read so far, without reading.
+	 * @return The next frame, which must be closed after processing, or {@code null} if more bytes need to be read
+	 * @throws ProtocolException If the transport header of the next frame is invalid
+	 */
+	public Frame poll() throws ProtocolException {
+		if (largeFrame != null) {
+			return largeFrameBuffer.hasRemaining() ? null : completeLargeFrame();
+		}
+		int available = writePos - readPos;
+		if (skip > 0) {
+			int skipped = Math.min(available, skip);
+			readPos += skipped;
+			skip -= skipped;
+			available -= skipped;
+		}
+		if (chunk == null || skip > 0 || available < FrameEncoder.TRANSPORT_HEADER_SIZE) {
+			return null;
+		}
+		int frameSize = frameSize();
+		if (FrameEncoder.TRANSPORT_HEADER_SIZE + frameSize > chunkSize && !acceptLargeFrames.getAsBoolean()) {
+			return rejectLargeFrame(frameSize, available);
+		} else if (FrameEncoder.TRANSPORT_HEADER_SIZE + frameSize > chunkSize) {
+			// continue reading into a dedicated buffer:
+			int copied = Math.min(available - FrameEncoder.TRANSPORT_HEADER_SIZE, frameSize);
+			largeFrame = bufferPool.lease(frameSize);
+			MemorySegment.copy(chunk.segment, readPos + FrameEncoder.TRANSPORT_HEADER_SIZE, largeFrame.segment(), 0, copied);
+			largeFrameBuffer = largeFrame.segment().asByteBuffer().position(copied);
+			readPos += FrameEncoder.TRANSPORT_HEADER_SIZE + copied;
+			return poll();
+		} else if (available < FrameEncoder.TRANSPORT_HEADER_SIZE + frameSize) {
+			return null;
+		} else {
+			var segment = chunk.segment.asSlice(readPos + FrameEncoder.TRANSPORT_HEADER_SIZE, frameSize);
+			readPos += FrameEncoder.TRANSPORT_HEADER_SIZE + frameSize;
+			return new Frame(segment, chunk.retain()::release, false);
+		}
+	}
+
+	/**
+	 * Hands out the packet header of a frame that must not be read completely and skips the remainder of the frame.
+	 */
+	private Frame rejectLargeFrame(int frameSize, int available) {
+		if (available < FrameEncoder.TRANSPORT_HEADER_SIZE + PacketHeader.STRUCTURE_SIZE) {
+			return null;
+		}
+		var segment = chunk.segment.asSlice(readPos + FrameEncoder.TRANSPORT_HEADER_SIZE, PacketHeader.STRUCTURE_SIZE);
+		readPos += FrameEncoder.TRANSPORT_HEADER_SIZE + PacketHeader.STRUCTURE_SIZE;
+		skip = frameSize - PacketHeader.STRUCTURE_SIZE;
+		return new Frame(segment, chunk.retain()::release, true);
+	}
+
+	private int frameSize() throws ProtocolException {
+		int frameSize = chunk.segment.get(Layouts.BE_INT32, readPos); // "network byte order" is big endian
+		if ((frameSize & 0xFF000000) != 0) {
+			throw new ProtocolException("Invalid transport header: first byte must be zero");
+		} else if (frameSize > maxFrameSize) {
+			throw new ProtocolException("Frame of " + frameSize + " bytes exceeds maximum of " + maxFrameSize + " bytes");
+		}
+		return frameSize;
+	}
+
+	private Frame completeLargeFrame() {
+		var lease = largeFrame;
+		largeFrame = null;
+		largeFrameBuffer = null;
+		return new Frame(lease.segment(), lease::close, false);
+	}
+
+	/**
+	 * Returns the buffer to the pool if it holds no partial frame, so idle connections don't occupy any buffer.
+	 * The next {@link #fill(ReadableByteChannel)} will lease a new buffer.
+	 */
+	public void trim() {
+		if (chunk != null && readPos == writePos && largeFrame == null) {
+			chunk.release();
+			chunk = null;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (chunk != null) {
+			chunk.release();
+			chunk = null;
+		}
+		if (largeFrame != null) {
+			largeFrame.close();
+			largeFrame = null;
+		}
+	}
+
+	/**
+	 * A received SMB or SMB2 message without its transport header.
+	 */
+	static class Frame implements AutoCloseable {
+
+		private final MemorySegment segment;
+		private final Runnable release;
+		private final boolean truncated;
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private Frame(MemorySegment segment, Runnable release, boolean truncated) {
+			this.segment = segment;
+			this.release = release;
+			this.truncated = truncated;
+		}
+
+		public MemorySegment segment() {
+			return segment;
+		}
+
+		/**
+		 * @return Whether the frame has been rejected due to memory pressure, in which case the segment only contains the SMB2 packet header
+		 */
+		public boolean isTruncated() {
+			return truncated;
+		}
+
+		/**
+		 * Releases the underlying buffer. Subsequent invocations have no effect.
+		 */
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				release.run();
+			}
+		}
+	}
+
+	/**
+	 * A reference-counted pooled buffer, referenced by the decoder and each frame sliced from it.
+	 */
+	private static class Chunk {
+
+		private final BufferPool.Lease lease;
+		private final MemorySegment segment;
+		private final ByteBuffer buffer;
+		private final AtomicInteger refCount = new AtomicInteger(1);
+
+		Chunk(BufferPool.Lease lease) {
+			this.lease = lease;
+			this.segment = lease.segment();
+			this.buffer = segment.asByteBuffer();
+		}
+
+		boolean isExclusive() {
+			return refCount.get() == 1;
+		}
+
+		Chunk retain() {
+			refCount.incrementAndGet();
+			return this;
+		}
+
+		void release() {
+			if (refCount.decrementAndGet() == 0) {
+				lease.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.common.SMBMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Encodes responses as Direct TCP transport frames, referencing the messages' segments instead of copying them.
+ *
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/1dfacde4-b5c7-4494-8a14-a09d3ab4cc83">Transport</a>
+ */
+class FrameEncoder {
+
+	public static final int TRANSPORT_HEADER_SIZE = 4;
+
+	private FrameEncoder() {
+	}
+
+	/**
+	 * Creates the buffers for a single frame.
+	 * @param transportHeader A buffer with at least {@value TRANSPORT_HEADER_SIZE} bytes remaining, which will be used for the transport header
+	 * @param response The message to send
+	 * @return The transport header followed by views of the message's segments
+	 */
+	public static ByteBuffer[] encode(ByteBuffer transportHeader, SMBMessage response) {
+		var segments = response.segments();
+		var buffers = new ByteBuffer[1 + segments.length];
+		long length = 0;
+		for (int i = 0; i < segments.length; i++) {
+			buffers[i + 1] = segments[i].asByteBuffer();
+			length += segments[i].byteSize();
+		}
+		buffers[0] = transportHeader(transportHeader, length);
+		return buffers;
+	}
+
+	private static ByteBuffer transportHeader(ByteBuffer buffer, long messageLength) {
+		if (messageLength > 0x00FFFFFF) {
+			throw new IllegalArgumentException("Message too large: " + messageLength);
+		}
+		return buffer.clear().limit(TRANSPORT_HEADER_SIZE).putInt(0, (int) messageLength); // "network byte order" is big endian, first byte is always 0
+	}
+
+	/**
+	 * Writes all buffers to a blocking channel.
+	 * @param channel The channel in blocking mode
+	 * @param buffers The buffers to write
+	 * @throws IOException If writing fails
+	 */
+	public static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers) throws IOException {
+		long remaining = remaining(buffers);
+		while (remaining > 0) {
+			remaining -= channel.write(buffers);
+		}
+	}
+
+	public static long remaining(ByteBuffer[] buffers) {
+		long remaining = 0;
+		for (var buffer : buffers) {
+			remaining += buffer.remaining();
+		}
+		return remaining;
+	}
+}
@@ -0,0 +1,184 @@
+package org.cryptomator.jsmb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One end of an in-memory, full-duplex byte stream, which behaves like a blocking {@link java.nio.channels.SocketChannel}.
+ * <p>
+ * Used to connect clients to a server in the same process without involving the network stack, e.g. for tests and benchmarks.
+ *
+ * @see TcpServer#connect()
+ */
+public class LoopbackChannel implements ByteChannel, GatheringByteChannel {
+
+	static final int DEFAULT_CAPACITY = 1 << 16; // 64 KiB
+
+	private final Pipe inbound;
+	private final Pipe outbound;
+
+	private LoopbackChannel(Pipe inbound, Pipe outbound) {
+		this.inbound = inbound;
+		this.outbound = outbound;
+	}
+
+	/**
+	 * Creates a pair of connected channels. Bytes written to one end can be read from the other end.
+	 * @param capacity Number of bytes buffered per direction, before writes block
+	 * @return Both ends of the connection
+	 */
+	public static LoopbackChannel[] pair(int capacity) {
+		var a = new Pipe(capacity);
+		var b = new Pipe(capacity);
+		return new LoopbackChannel[]{new LoopbackChannel(a, b), new LoopbackChannel(b, a)};
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		return inbound.read(dst);
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		return (int) outbound.write(new ByteBuffer[]{src}, 0, 1);
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		Objects.checkFromIndexSize(offset, length, srcs.length);
+		return outbound.write(srcs, offset, length);
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs) throws IOException {
+		return write(srcs, 0, srcs.length);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !inbound.readerClosed;
+	}
+
+	/**
+	 * Closes this end. The peer will read end-of-stream after consuming pending bytes, and fail to write further bytes.
+	 */
+	@Override
+	public void close() {
+		inbound.closeReader();
+		outbound.closeWriter();
+	}
+
+	/**
+	 * A bounded ring buffer transferring bytes in a single direction.
+	 */
+	private static class Pipe {
+
+		private final byte[] buffer;
+		private final Lock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+		private int readPos;
+		private int size;
+		private volatile boolean readerClosed;
+		private volatile boolean writerClosed;
+
+		Pipe(int capacity) {
+			this.buffer = new byte[capacity];
+		}
+
+		int read(ByteBuffer dst) throws IOException {
+			lock.lock();
+			try {
+				while (size == 0) {
+					if (readerClosed) {
+						throw new ClosedChannelException();
+					} else if (writerClosed) {
+						return -1;
+					} else if (!dst.hasRemaining()) {
+						return 0;
+					}
+					await(notEmpty);
+				}
+				int n = Math.min(size, dst.remaining());
+				int first = Math.min(n, buffer.length - readPos);
+				dst.put(buffer, readPos, first).put(buffer, 0, n - first);
+				readPos = (readPos + n) % buffer.length;
+				size -= n;
+				notFull.signalAll();
+				return n;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			long written = 0;
+			lock.lock();
+			try {
+				for (int i = offset; i < offset + length; i++) {
+					var src = srcs[i];
+					while (src.hasRemaining()) {
+						while (size == buffer.length && !readerClosed && !writerClosed) {
+							await(notFull);
+						}
+						if (readerClosed || writerClosed) {
+							throw new ClosedChannelException();
+						}
+						int writePos = (readPos + size) % buffer.length;
+						int n = Math.min(src.remaining(), Math.min(buffer.length - size, buffer.length - writePos));
+						src.get(buffer, writePos, n);
+						size += n;
+						written += n;
+						notEmpty.signalAll();
+					}
+				}
+				return written;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void await(Condition condition) throws ClosedByInterruptException {
+			try {
+				condition.await();
+			} catch (InterruptedException e) {
+				// behave like an InterruptibleChannel:
+				readerClosed = writerClosed = true;
+				notEmpty.signalAll();
+				notFull.signalAll();
+				Thread.currentThread().interrupt();
+				throw new ClosedByInterruptException();
+			}
+		}
+
+		void closeReader() {
+			lock.lock();
+			try {
+				readerClosed = true;
+				notFull.signalAll();
+				notEmpty.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void closeWriter() {
+			lock.lock();
+			try {
+				writerClosed = true;
+				notEmpty.signalAll();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.util.BufferPool;
+import org.cryptomator.jsmb.util.TimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Periodically samples the heap occupancy and the size of the off-heap buffer pool, and derives the server's {@link Pressure memory pressure}.
+ * <p>
+ * Heap occupancy is measured after the most recent garbage collection, so garbage that is about to be collected does not count. The higher
+ * of both ratios determines the pressure. To avoid flapping, the pressure is only lowered once the usage dropped noticeably below the
+ * threshold of the current level.
+ */
+class MemoryMonitor implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MemoryMonitor.class);
+	private static final Duration INTERVAL = Duration.ofSeconds(1);
+	private static final double HYSTERESIS = 0.05;
+
+	/**
+	 * Levels of memory pressure, each implying the measures of the previous levels.
+	 */
+	enum Pressure {
+		/**
+		 * No measures taken.
+		 */
+		NORMAL(0.0),
+		/**
+		 * Clients are granted fewer credits.
+		 */
+		ELEVATED(0.70),
+		/**
+		 * New connections are refused.
+		 */
+		HIGH(0.85),
+		/**
+		 * Requests that don't fit into a regular receive buffer, or that ask for a response exceeding this size, are answered with
+		 * STATUS_INSUFFICIENT_RESOURCES.
+		 */
+		CRITICAL(0.95);
+
+		private final double threshold;
+
+		Pressure(double threshold) {
+			this.threshold = threshold;
+		}
+
+		/**
+		 * Determines the pressure for the given memory usage.
+		 * @param usage The fraction of memory in use
+		 * @param current The current pressure
+		 * @return The new pressure
+		 */
+		static Pressure of(double usage, Pressure current) {
+			var result = NORMAL;
+			for (var level : values()) {
+				boolean sticky = level.compareTo(current) <= 0;
+				if (usage >= (sticky ? level.threshold - HYSTERESIS : level.threshold)) {
+					result = level;
+				}
+			}
+			return result;
+		}
+	}
+
+	private final BufferPool bufferPool;
+	private final long bufferMemoryBudget;
+	private final TimerWheel timers;
+	private final Consumer<Pressure> onChange;
+	private final List<MemoryPoolMXBean> heapPools;
+	private volatile Pressure pressure = Pressure.NORMAL;
+	private volatile TimerWheel.Timeout nextSample;
+	private volatile boolean closed;
+
+	/**
+	 * Starts sampling.
+	 * @param bufferPool The pool of receive buffers
+	 * @param bufferMemoryBudget Number of bytes the buffer pool may hold, including leased buffers
+	 * @param timers The timer wheel used to schedule samples
+	 * @param onChange Invoked whenever the pressure changes
+	 */
+	public MemoryMonitor(BufferPool bufferPool, long bufferMemoryBudget, TimerWheel timers, Consumer<Pressure> onChange) {
+		this.bufferPool = bufferPool;
+		this.bufferMemoryBudget = bufferMemoryBudget;
+		this.timers = timers;
+		this.onChange = onChange;
+		this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream() //
+				.filter(pool -> pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) //
+				.toList();
+		this.nextSample = timers.schedule(INTERVAL, this::sample);
+	}
+
+	public Pressure pressure() {
+		return pressure;
+	}
+
+	/**
+	 * @return Whether a buffer exceeding the regular receive buffer size may be allocated for a request or its response
+	 */
+	public boolean acceptsLargeRequests() {
+		return pressure != Pressure.CRITICAL;
+	}
+
+	private void sample() {
+		if (closed) {
+			return;
+		}
+		var stats = bufferPool.stats();
+		double bufferUsage = (double) (stats.leasedBytes() + stats.pooledBytes()) / bufferMemoryBudget;
+		double heapUsage = heapUsage();
+		double usage = Math.max(heapUsage, bufferUsage);
+		var previous = pressure;
+		var current = Pressure.of(usage, previous);
+		if (current != previous) {
+			pressure = current;
+			LOG.warn("Memory pressure changed from {} to {} (heap: {}%, buffers: {}%)", previous, current, Math.round(heapUsage * 100), Math.round(bufferUsage * 100));
+			onChange.accept(current);
+		}
+		nextSample = timers.schedule(INTERVAL, this::sample);
+	}
+
+	private double heapUsage() {
+		long used = 0;
+		for (var pool : heapPools) {
+			var usage = pool.getCollectionUsage();
+			used += usage == null ? 0 : usage.getUsed();
+		}
+		return (double) used / Runtime.getRuntime().maxMemory();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		nextSample.cancel();
+	}
+}
@@ -0,0 +1,185 @@
+package org.cryptomator.jsmb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queues the encoded responses of a connection, until they are written to the socket.
+ * <p>
+ * Frames may be added by any thread. Whichever thread flushes the queue writes all frames queued so far in as few gathering writes as
+ * possible, while concurrent flushes return immediately, leaving their frames to the thread already writing.
+ * <p>
+ * If the client does not read its responses, queued bytes accumulate. Once they exceed the high watermark, the queue is
+ * {@link #isCongested() congested} and the connection should stop reading further requests, until the queue has {@link #isDrained() drained}
+ * to the low watermark.
+ */
+class OutboundQueue {
+
+	private static final int MAX_BUFFERS_PER_WRITE = 1024; // IOV_MAX on Linux
+
+	private final long highWatermark;
+	private final long lowWatermark;
+	private final Queue<ByteBuffer[]> frames = new ConcurrentLinkedQueue<>();
+	private final AtomicLong queuedBytes = new AtomicLong();
+	private final ByteBuffer[] batch = new ByteBuffer[MAX_BUFFERS_PER_WRITE];
+	private final Lock flushLock = new ReentrantLock();
+	private final Lock drainLock = new ReentrantLock();
+	private final Condition drained = drainLock.newCondition();
+	private volatile boolean closed;
+
+	/**
+	 * @param highWatermark Number of queued bytes beyond which the queue is congested
+	 */
+	public OutboundQueue(long highWatermark) {
+		this.highWatermark = highWatermark;
+		this.lowWatermark = highWatermark / 2;
+	}
+
+	/**
+	 * Adds a frame to the end of the queue.
+	 * @param frame The buffers of an encoded frame
+	 * @see FrameEncoder#encode(ByteBuffer, org.cryptomator.jsmb.common.SMBMessage)
+	 */
+	public void add(ByteBuffer[] frame) {
+		queuedBytes.addAndGet(FrameEncoder.remaining(frame));
+		frames.add(frame);
+	}
+
+	/**
+	 * Writes queued frames, unless another thread is already doing so.
+	 * <p>
+	 * Stops early if a non-blocking channel does not accept further bytes. Otherwise, all frames added before this call have been written or
+	 * will be written by a concurrent invocation, when this method returns.
+	 * @param channel The channel to write to
+	 * @throws IOException If writing fails
+	 */
+	public void flush(GatheringByteChannel channel) throws IOException {
+		while (!frames.isEmpty() && flushLock.tryLock()) { // re-check after unlocking, in case frames were added while the lock was held
+			try {
+				if (!writeQueuedFrames(channel)) {
+					return;
+				}
+			} finally {
+				flushLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Waits for concurrent flushes to finish, then writes the remaining frames.
+	 * @param channel A channel in blocking mode
+	 * @throws IOException If writing fails
+	 * @throws InterruptedException If interrupted while waiting for a concurrent flush
+	 */
+	public void flushFully(GatheringByteChannel channel) throws IOException, InterruptedException {
+		flushLock.lockInterruptibly();
+		try {
+			writeQueuedFrames(channel);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	// must hold flushLock
+	private boolean writeQueuedFrames(GatheringByteChannel channel) throws IOException {
+		while (!frames.isEmpty()) {
+			int n = 0;
+			long batchSize = 0;
+			for (var frame : frames) {
+				for (var buffer : frame) {
+					if (buffer.hasRemaining() && n < MAX_BUFFERS_PER_WRITE) {
+						batch[n++] = buffer;
+						batchSize += buffer.remaining();
+					}
+				}
+				if (n == MAX_BUFFERS_PER_WRITE) {
+					break;
+				}
+			}
+			long written = channel.write(batch, 0, n);
+			Arrays.fill(batch, 0, n, null);
+			ByteBuffer[] head;
+			while ((head = frames.peek()) != null && FrameEncoder.remaining(head) == 0) {
+				frames.remove();
+			}
+			release(written);
+			if (written < batchSize) {
+				return false; // socket send buffer is full
+			}
+		}
+		return true;
+	}
+
+	private void release(long bytes) {
+		long remaining = queuedBytes.addAndGet(-bytes);
+		if (remaining <= lowWatermark && remaining + bytes > lowWatermark) {
+			drainLock.lock();
+			try {
+				drained.signalAll();
+			} finally {
+				drainLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return {@code true} if all queued frames have been written
+	 */
+	public boolean isEmpty() {
+		return frames.isEmpty();
+	}
+
+	/**
+	 * @return {@code true} if more bytes than the high watermark are queued
+	 */
+	public boolean isCongested() {
+		return queuedBytes.get() > highWatermark;
+	}
+
+	/**
+	 * @return {@code true} if no more bytes than the low watermark are queued
+	 */
+	public boolean isDrained() {
+		return queuedBytes.get() <= lowWatermark;
+	}
+
+	/**
+	 * Blocks while the queue is congested, until it has drained to the low watermark or has been closed.
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public void awaitUncongested() throws InterruptedException {
+		if (!isCongested()) {
+			return;
+		}
+		drainLock.lock();
+		try {
+			while (!isDrained() && !closed) {
+				drained.await();
+			}
+		} finally {
+			drainLock.unlock();
+		}
+	}
+
+	/**
+	 * Discards all queued frames and wakes up threads waiting for the queue to drain.
+	 */
+	public void close() {
+		closed = true;
+		frames.clear();
+		drainLock.lock();
+		try {
+			drained.signalAll();
+		} finally {
+			drainLock.unlock();
+		}
+	}
+}
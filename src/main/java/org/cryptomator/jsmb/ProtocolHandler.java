@@ -0,0 +1,436 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.common.MalformedMessageException;
+import org.cryptomator.jsmb.common.NTStatus;
+import org.cryptomator.jsmb.common.SMBMessage;
+import org.cryptomator.jsmb.smb1.SMB1MessageParser;
+import org.cryptomator.jsmb.smb1.SMB1Negotiator;
+import org.cryptomator.jsmb.smb1.SmbComNegotiateRequest;
+import org.cryptomator.jsmb.smb2.*;
+import org.cryptomator.jsmb.util.Layouts;
+import org.cryptomator.jsmb.util.TimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Transport-independent processing of the SMB messages received on a single connection.
+ */
+class ProtocolHandler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ProtocolHandler.class);
+	private static final ThreadLocal<PendingFrame> CURRENT_FRAME = new ThreadLocal<>();
+
+	private final TcpServer server;
+	private final AdmissionControl.Permit permit;
+	private final Connection connection;
+	private final Negotiator negotiator;
+	private final Runnable disconnect;
+	private final Runnable abort;
+	private volatile TimerWheel.Timeout idleTimeout;
+	private volatile long lastActivity = System.nanoTime();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private volatile boolean draining;
+	private volatile boolean closed;
+
+	/**
+	 * @param server The server
+	 * @param permit The connection's admission
+	 * @param disconnect Closes the connection after writing pending responses, invoked if the connection is idle for too long or drained
+	 * @param abort Closes the connection immediately, without writing pending responses
+	 * @param transportLevelSecurity Whether the transport is secured by itself, see {@link Connection#transportLevelSecurity}
+	 * @param localPeer Whether the client runs on the same host, in which case it is trusted if {@link ServerConfig#trustLoopback()} is set
+	 */
+	public ProtocolHandler(TcpServer server, AdmissionControl.Permit permit, Runnable disconnect, Runnable abort, boolean transportLevelSecurity, boolean localPeer) {
+		this.server = server;
+		this.permit = permit;
+		this.connection = new Connection(server.global, transportLevelSecurity, localPeer && server.config.trustLoopback());
+		int transferSize = server.config.transferSizes().transferSize(server.connectionCount());
+		connection.maxReadSize = transferSize;
+		connection.maxWriteSize = transferSize;
+		connection.maxTransactSize = transferSize;
+		this.negotiator = new Negotiator(server, connection);
+		this.disconnect = disconnect;
+		this.abort = abort;
+		this.idleTimeout = server.timers.schedule(server.config.idleTimeout(), this::checkIdle);
+		server.register(this);
+	}
+
+	/**
+	 * Creates the dispatcher shared by all connections, with handlers for all supported SMB2 commands.
+	 * @param timed Whether to measure the time spent in each phase
+	 * @return A new dispatcher
+	 */
+	static Dispatcher<ProtocolHandler> createDispatcher(boolean timed) {
+		return Dispatcher.<ProtocolHandler>builder() //
+				.handler(Command.NEGOATIATE, NegotiateRequest.class, (handler, request) -> handler.negotiator.negotiate(request)) //
+				.handler(Command.SESSION_SETUP, SessionSetupRequest.class, ProtocolHandler::sessionSetup) //
+				.timed(timed) //
+				.build();
+	}
+
+	/**
+	 * Disconnects as soon as no request is being processed. Requests received until then are still processed.
+	 */
+	public void drain() {
+		draining = true;
+		if (inFlight.get() == 0) {
+			disconnect.run();
+		}
+	}
+
+	/**
+	 * Closes the connection regardless of requests being processed or responses not yet written.
+	 */
+	public void abort() {
+		abort.run();
+	}
+
+	/**
+	 * Releases resources held on behalf of the connection. Invoked by the transport once the connection has been closed.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		idleTimeout.cancel();
+		connection.closeSessions();
+		connection.credits.release();
+		permit.close();
+		server.deregister(this);
+	}
+
+	private void checkIdle() {
+		if (closed) {
+			return;
+		}
+		long idleNanos = System.nanoTime() - lastActivity;
+		long remainingNanos = server.config.idleTimeout().toNanos() - idleNanos;
+		if (remainingNanos <= 0) {
+			disconnect.run();
+		} else {
+			// lazily reschedule instead of on every message:
+			idleTimeout = server.timers.schedule(Duration.ofNanos(remainingNanos), this::checkIdle);
+		}
+	}
+
+	/**
+	 * Processes a single SMB or SMB2 message (without the transport header).
+	 * @param messageSegment The message
+	 * @param responseWriter Receives the responses in the order they are created
+	 * @throws MalformedMessageException If the message can not be processed
+	 */
+	public void handle(MemorySegment messageSegment, Consumer<SMBMessage> responseWriter) throws MalformedMessageException {
+		lastActivity = System.nanoTime();
+		inFlight.incrementAndGet();
+		try {
+			if (SMB1MessageParser.isSmb1(messageSegment)) {
+				handleSmb1Packet(messageSegment, responseWriter);
+			} else if (SMB2MessageParser.isSmb2(messageSegment)) {
+				handleSmb2Packet(messageSegment, responseWriter);
+			} else {
+				throw new MalformedMessageException("Unknown protocol");
+			}
+		} finally {
+			if (inFlight.decrementAndGet() == 0 && draining) {
+				disconnect.run();
+			}
+		}
+	}
+
+	/**
+	 * Answers a request that has not been received completely, as it has been rejected due to memory pressure, with
+	 * STATUS_INSUFFICIENT_RESOURCES.
+	 * @param headerSegment The SMB2 packet header of the rejected message
+	 * @param responseWriter Receives the response
+	 * @throws MalformedMessageException If the message can not be answered without processing it
+	 */
+	public void reject(MemorySegment headerSegment, Consumer<SMBMessage> responseWriter) throws MalformedMessageException {
+		lastActivity = System.nanoTime();
+		inFlight.incrementAndGet();
+		try {
+			if (headerSegment.byteSize() < PacketHeader.STRUCTURE_SIZE || headerSegment.get(Layouts.LE_INT32, 0) != SMB2Message.PROTOCOL_ID) {
+				throw new MalformedMessageException("Not a SMB2 message");
+			}
+			var header = new PacketHeader(headerSegment.asSlice(0, PacketHeader.STRUCTURE_SIZE));
+			if (header.nextCommand() != 0) {
+				throw new MalformedMessageException("Can not answer skipped compound requests");
+			}
+			verifySequenceNumber(header);
+			LOG.debug("Rejecting command {} due to memory pressure", (int) header.command());
+			var error = ErrorResponse.create(header, NTStatus.STATUS_INSUFFICIENT_RESOURCES, connection.credits.grant(header));
+			responseWriter.accept(server.dispatcher.complete(this, List.of(new CompoundResponse.Part(error, false))));
+		} finally {
+			if (inFlight.decrementAndGet() == 0 && draining) {
+				disconnect.run();
+			}
+		}
+	}
+
+	/**
+	 * Whether the request processed by the calling thread has timed out and has already been answered with STATUS_IO_TIMEOUT. Handlers
+	 * doing lengthy work should check this and stop early, as anything they respond afterwards is discarded.
+	 * @return {@code true} if the current request has been cancelled
+	 */
+	boolean isCancelled() {
+		var frame = CURRENT_FRAME.get();
+		return frame != null && frame.isExpired();
+	}
+
+	private void handleSmb1Packet(MemorySegment segment, Consumer<SMBMessage> responseWriter) throws MalformedMessageException {
+		var msg = SMB1MessageParser.parse(segment);
+		if (!connection.commandSequenceWindow.consume(0, 1)) { // an SMB1 NEGOTIATE implicitly uses MessageId 0
+			throw new MalformedMessageException("Unexpected SMB1 message");
+		}
+		var response = switch (msg) {
+			case SmbComNegotiateRequest request -> new SMB1Negotiator(server, connection).negotiate(request);
+			default -> throw new MalformedMessageException("Command not implemented: " + msg.command());
+		};
+		responseWriter.accept(response);
+	}
+
+	private void handleSmb2Packet(MemorySegment segment, Consumer<SMBMessage> responseWriter) throws MalformedMessageException {
+		var frame = new PendingFrame(segment, responseWriter);
+		var deadline = server.timers.schedule(server.config.requestTimeout(), frame::expire);
+		CURRENT_FRAME.set(frame);
+		try {
+			handleSmb2Requests(frame, segment);
+		} finally {
+			CURRENT_FRAME.remove();
+			deadline.cancel();
+			frame.release(); // must not access the segment afterwards, as it is returned to the buffer pool
+		}
+	}
+
+	private void handleSmb2Requests(PendingFrame frame, MemorySegment segment) throws MalformedMessageException {
+		long offset = 0;
+		int nextCommand;
+		do {
+			var remaining = segment.asSlice(offset);
+			if (!SMB2MessageParser.isSmb2(remaining)) {
+				throw new MalformedMessageException("Not a SMB2 message at offset " + offset);
+			}
+			nextCommand = remaining.get(Layouts.LE_INT32, 20); // NextCommand field of the packet header
+			if (nextCommand % 8 != 0 || nextCommand < 0 || nextCommand >= remaining.byteSize()) {
+				throw new MalformedMessageException("Invalid NextCommand offset: " + nextCommand);
+			}
+			var request = nextCommand == 0 ? remaining : remaining.asSlice(0, nextCommand);
+			var header = new PacketHeader(request.asSlice(0, PacketHeader.STRUCTURE_SIZE));
+			SMB2Message response;
+			if (!server.memoryMonitor.acceptsLargeRequests() && requestedResponseSize(header, request) > FrameDecoder.DEFAULT_CHUNK_SIZE) {
+				if (!frame.begin(offset, header)) {
+					return; // already answered with STATUS_IO_TIMEOUT
+				}
+				LOG.debug("Rejecting command {} due to memory pressure", (int) header.command());
+				response = ErrorResponse.create(header, NTStatus.STATUS_INSUFFICIENT_RESOURCES, connection.credits.grant(header));
+			} else {
+				var msg = SMB2MessageParser.parse(request);
+				if (!frame.begin(offset, header)) {
+					return; // already answered with STATUS_IO_TIMEOUT
+				}
+				var session = connection.sessionTable.get(header.sessionId());
+				if (session != null) {
+					session.touch();
+				}
+				response = server.dispatcher.dispatch(this, msg);
+			}
+			offset += nextCommand;
+			frame.add(new CompoundResponse.Part(response, header.hasFlag(SMB2Message.Flags.RELATED_OPERATIONS)), nextCommand == 0 ? -1 : offset);
+		} while (nextCommand != 0);
+		frame.complete();
+	}
+
+	/**
+	 * Determines the amount of data a request asks for, which the server needs to buffer for its response.
+	 * @param header The request's header
+	 * @param request The request, including its header
+	 * @return The requested number of bytes, or {@code 0} if not applicable
+	 */
+	static long requestedResponseSize(PacketHeader header, MemorySegment request) {
+		// https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/320f04f3-1b28-45cd-aaa1-9e5aed810dca
+		// https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/10906442-294c-46d3-8515-c277efe1f752
+		long lengthOffset;
+		if (header.command() == Command.READ.value()) {
+			lengthOffset = PacketHeader.STRUCTURE_SIZE + 4; // Length
+		} else if (header.command() == Command.QUERY_DIRECTORY.value()) {
+			lengthOffset = PacketHeader.STRUCTURE_SIZE + 28; // OutputBufferLength
+		} else {
+			return 0;
+		}
+		return lengthOffset + 4 <= request.byteSize() ? Integer.toUnsignedLong(request.get(Layouts.LE_INT32, lengthOffset)) : 0;
+	}
+
+	private SMB2Message sessionSetup(SessionSetupRequest request) {
+		var response = negotiator.sessionSetup(request);
+		if (response.header().status() == NTStatus.STATUS_SUCCESS) {
+			permit.authenticated();
+		}
+		return response;
+	}
+
+	// https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/0326f784-0baf-45fd-9687-626859ef5a9b
+	private void verifySequenceNumber(PacketHeader header) throws MalformedMessageException {
+		if (header.command() == Command.CANCEL.value()) {
+			return; // CANCEL requests don't consume message IDs
+		}
+		int creditCharge = connection.supportsMultiCredit ? header.creditCharge() : 1;
+		if (!connection.commandSequenceWindow.consume(header.messageId(), creditCharge)) {
+			// the server MUST terminate the connection:
+			throw new MalformedMessageException("MessageId " + header.messageId() + " not within CommandSequenceWindow");
+		}
+	}
+
+	/**
+	 * The requests contained in a single SMB2 transport frame, which are answered together once processing completes or the request timeout
+	 * elapses, whichever happens first.
+	 * <p>
+	 * If the timeout elapses, responses finished so far are sent along with STATUS_IO_TIMEOUT errors for all remaining requests. The
+	 * processing thread is not interrupted, as this would close any interruptible channel it uses. Instead, handlers can check
+	 * {@link #isCancelled()}, and any response created afterwards is discarded. The frame's buffer is only released once the processing
+	 * thread returns.
+	 */
+	private class PendingFrame {
+
+		private final MemorySegment segment;
+		private final Consumer<SMBMessage> responseWriter;
+		private final List<CompoundResponse.Part> responses = new ArrayList<>(1);
+		private final Lock lock = new ReentrantLock();
+		private long pendingOffset; // offset of the first request without response
+		private boolean pendingVerified; // whether the first request without response has already consumed its MessageId
+		private boolean done;
+		private volatile boolean expired;
+
+		PendingFrame(MemorySegment segment, Consumer<SMBMessage> responseWriter) {
+			this.segment = segment;
+			this.responseWriter = responseWriter;
+		}
+
+		/**
+		 * Verifies the sequence number of the next request, unless the frame has already expired.
+		 * @return {@code false} if the frame has already been answered due to a timeout
+		 */
+		boolean begin(long offset, PacketHeader header) throws MalformedMessageException {
+			lock.lock();
+			try {
+				if (done) {
+					return false;
+				}
+				verifySequenceNumber(header);
+				pendingOffset = offset;
+				pendingVerified = true;
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Records the response to the current request.
+		 * @param response The response
+		 * @param nextOffset The offset of the next request within the frame, or {@code -1} if this was the last one
+		 */
+		void add(CompoundResponse.Part response, long nextOffset) {
+			lock.lock();
+			try {
+				responses.add(response);
+				pendingOffset = nextOffset;
+				pendingVerified = false;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void complete() {
+			lock.lock();
+			try {
+				if (done) {
+					return;
+				}
+				done = true;
+			} finally {
+				lock.unlock();
+			}
+			write(responses);
+		}
+
+		/**
+		 * Marks the frame as done, unless it is already, so a concurrent {@link #expire()} either completed or will not touch the segment.
+		 * Invoked when the processing thread returns, regardless of whether it completed the frame.
+		 */
+		void release() {
+			lock.lock();
+			try {
+				done = true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void expire() {
+			List<CompoundResponse.Part> parts;
+			lock.lock();
+			try {
+				if (done) {
+					return;
+				}
+				done = true;
+				expired = true;
+				parts = new ArrayList<>(responses);
+				appendTimeoutErrors(parts);
+			} finally {
+				lock.unlock();
+			}
+			server.timedOutRequests.increment();
+			LOG.warn("Request timed out after {}", server.config.requestTimeout());
+			try {
+				server.executor.execute(() -> write(parts)); // don't block the timer thread
+			} catch (RejectedExecutionException e) {
+				LOG.debug("Not sending timeout response during shutdown");
+			}
+		}
+
+		// must hold lock
+		private void appendTimeoutErrors(List<CompoundResponse.Part> parts) {
+			long offset = pendingOffset;
+			boolean verified = pendingVerified;
+			while (offset >= 0 && SMB2MessageParser.isSmb2(segment.asSlice(offset))) {
+				var header = new PacketHeader(segment.asSlice(offset, PacketHeader.STRUCTURE_SIZE));
+				if (!verified) {
+					try {
+						verifySequenceNumber(header);
+					} catch (MalformedMessageException e) {
+						break; // will be detected by the processing thread, if it ever continues
+					}
+				}
+				var error = ErrorResponse.create(header, NTStatus.STATUS_IO_TIMEOUT, connection.credits.grant(header));
+				parts.add(new CompoundResponse.Part(error, header.hasFlag(SMB2Message.Flags.RELATED_OPERATIONS)));
+				int nextCommand = header.nextCommand();
+				if (nextCommand <= 0 || nextCommand % 8 != 0 || offset + nextCommand >= segment.byteSize()) {
+					break;
+				}
+				offset += nextCommand;
+				verified = false;
+			}
+		}
+
+		private void write(List<CompoundResponse.Part> parts) {
+			if (!parts.isEmpty()) {
+				responseWriter.accept(server.dispatcher.complete(ProtocolHandler.this, parts));
+			}
+		}
+
+		boolean isExpired() {
+			return expired;
+		}
+	}
+}
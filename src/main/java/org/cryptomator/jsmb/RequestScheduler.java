@@ -0,0 +1,143 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.smb2.Command;
+import org.cryptomator.jsmb.smb2.PacketHeader;
+import org.cryptomator.jsmb.smb2.SMB2MessageParser;
+import org.cryptomator.jsmb.util.Layouts;
+
+import java.lang.foreign.MemorySegment;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Decides for each received message (i.e. transport frame), whether it may run concurrently to other requests of the same connection.
+ * <p>
+ * Frames are admitted in the order they have been received. A frame is executed <em>exclusively</em>, i.e. after all previously admitted
+ * frames completed and before any subsequent frame starts, if it is not an SMB2 message or if it contains a command that changes the state of
+ * the connection or session. Any other frame is executed on its own virtual thread, and its responses are written as soon as it completes.
+ * Compounded requests are always processed by a single thread in the order of the chain.
+ * <p>
+ * If pipelining is disabled, every frame is executed exclusively.
+ */
+class RequestScheduler {
+
+	/**
+	 * Commands that modify the connection or session state, which subsequent requests may depend on.
+	 */
+	private static final Set<Command> EXCLUSIVE_COMMANDS = EnumSet.of(Command.NEGOATIATE, Command.SESSION_SETUP, Command.LOGOFF, Command.TREE_CONNECT, Command.TREE_DISCONNECT);
+
+	private final Executor executor;
+	private final boolean pipelining;
+	private final int maxInFlight;
+	private final Semaphore inFlight;
+
+	/**
+	 * @param executor The executor on which concurrent requests are run
+	 * @param pipelining Whether to process independent requests concurrently
+	 * @param maxInFlight Maximum number of frames being processed concurrently
+	 */
+	public RequestScheduler(Executor executor, boolean pipelining, int maxInFlight) {
+		this.executor = executor;
+		this.pipelining = pipelining;
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+
+	/**
+	 * Dispatches a frame, blocking the calling reader thread until it is admitted.
+	 * Exclusive frames are run on the calling thread.
+	 * @param message The received message
+	 * @param task Processes the message
+	 * @throws InterruptedException If interrupted while waiting for admission
+	 * @throws RejectedExecutionException If the executor has been shut down, in which case the task will not run
+	 */
+	public void dispatch(MemorySegment message, Runnable task) throws InterruptedException {
+		if (isExclusive(message)) {
+			inFlight.acquire(maxInFlight);
+			try {
+				task.run();
+			} finally {
+				inFlight.release(maxInFlight);
+			}
+		} else {
+			inFlight.acquire();
+			execute(task);
+		}
+	}
+
+	/**
+	 * Dispatches a frame without blocking the calling thread.
+	 * <p>
+	 * If the frame can not be admitted immediately, the caller must stop reading further frames, until {@code resumeReading} is invoked.
+	 * @param message The received message
+	 * @param task Processes the message
+	 * @param resumeReading Invoked as soon as the next frame may be read, if this method returns {@code false}
+	 * @return {@code true} if the caller may continue reading the next frame immediately
+	 * @throws RejectedExecutionException If the executor has been shut down, in which case the task will not run
+	 */
+	public boolean dispatchNonBlocking(MemorySegment message, Runnable task, Runnable resumeReading) {
+		boolean exclusive = isExclusive(message);
+		if (!exclusive && inFlight.tryAcquire()) {
+			execute(task);
+			return true;
+		} else if (exclusive) {
+			executor.execute(() -> {
+				inFlight.acquireUninterruptibly(maxInFlight);
+				try {
+					task.run();
+				} finally {
+					inFlight.release(maxInFlight);
+					resumeReading.run();
+				}
+			});
+			return false;
+		} else {
+			executor.execute(() -> {
+				inFlight.acquireUninterruptibly();
+				resumeReading.run();
+				runAndRelease(task);
+			});
+			return false;
+		}
+	}
+
+	private void execute(Runnable task) {
+		try {
+			executor.execute(() -> runAndRelease(task));
+		} catch (RejectedExecutionException e) {
+			inFlight.release();
+			throw e;
+		}
+	}
+
+	private void runAndRelease(Runnable task) {
+		try {
+			task.run();
+		} finally {
+			inFlight.release();
+		}
+	}
+
+	private boolean isExclusive(MemorySegment message) {
+		if (!pipelining || !SMB2MessageParser.isSmb2(message)) {
+			return true;
+		}
+		// check each command in the compound chain:
+		long offset = 0;
+		while (offset + PacketHeader.STRUCTURE_SIZE <= message.byteSize()) {
+			char command = message.get(Layouts.LE_UINT16, offset + 12);
+			if (!Command.isKnown(command) || EXCLUSIVE_COMMANDS.contains(Command.valueOf(command))) {
+				return true;
+			}
+			int nextCommand = message.get(Layouts.LE_INT32, offset + 20);
+			if (nextCommand <= 0) {
+				return false;
+			}
+			offset += nextCommand;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,204 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.smb2.TransferSizePolicy;
+
+import java.time.Duration;
+
+/**
+ * Tuning parameters of a {@link TcpServer}.
+ *
+ * @param transportMode How connections are served
+ * @param eventLoopThreads Number of selector threads, if {@link TransportMode#EVENT_LOOP} is used
+ * @param maxPooledBytes Maximum number of bytes retained by the receive buffer pool while not in use
+ * @param pipelining Whether independent requests of the same connection are processed concurrently
+ * @param maxCredits Maximum number of SMB2 credits outstanding across all connections
+ * @param maxCreditsPerConnection Maximum number of SMB2 credits a single client may hold
+ * @param maxConnections Maximum number of open connections, further connections are refused
+ * @param maxUnauthenticatedConnections Maximum number of open connections that did not yet establish a session
+ * @param maxRequestsPerConnection Maximum number of requests processed concurrently per connection, if pipelining is enabled
+ * @param acceptBacklog Maximum number of pending connections queued by the operating system
+ * @param acceptors Number of listening sockets bound to the same port via {@code SO_REUSEPORT}, each served by its own acceptor thread
+ * @param idleTimeout Duration after which a connection without any received messages is closed
+ * @param sessionIdleTimeout Duration after which a session without any requests expires
+ * @param maxQueuedResponseBytes Number of unsent response bytes per connection, beyond which no further requests are read until half of them have been sent
+ * @param transferSizes How large reads and writes may be
+ * @param requestTimeout Duration after which a pending request is answered with STATUS_IO_TIMEOUT, while its receive buffer is held until its handler returns
+ * @param bufferMemoryBudget Number of bytes of leased and pooled receive buffers, beyond which the server sheds load
+ * @param trustLoopback Whether clients connecting via a loopback address or in memory are trusted, so neither signing nor encryption are required
+ * @param timeDispatch Whether to measure the time spent in each phase of request processing, see {@link TcpServer#dispatcher()}
+ */
+public record ServerConfig(TransportMode transportMode, int eventLoopThreads, long maxPooledBytes, boolean pipelining, long maxCredits, int maxCreditsPerConnection,
+						   int maxConnections, int maxUnauthenticatedConnections, int maxRequestsPerConnection, int acceptBacklog, int acceptors,
+						   Duration idleTimeout, Duration sessionIdleTimeout, long maxQueuedResponseBytes,
+						   TransferSizePolicy transferSizes, Duration requestTimeout, long bufferMemoryBudget,
+						   boolean trustLoopback, boolean timeDispatch) {
+
+	public ServerConfig {
+		if (eventLoopThreads < 1) {
+			throw new IllegalArgumentException("eventLoopThreads must be positive");
+		}
+		if (maxPooledBytes < 0) {
+			throw new IllegalArgumentException("maxPooledBytes must not be negative");
+		}
+		if (maxCredits < 1 || maxCreditsPerConnection < 1 || maxCreditsPerConnection > Character.MAX_VALUE) {
+			throw new IllegalArgumentException("credit limits must be positive and per-connection limit must not exceed 65535");
+		}
+		if (maxConnections < 1 || maxUnauthenticatedConnections < 1 || maxRequestsPerConnection < 1 || acceptBacklog < 1 || acceptors < 1) {
+			throw new IllegalArgumentException("connection limits must be positive");
+		}
+		if (!idleTimeout.isPositive() || !sessionIdleTimeout.isPositive() || !requestTimeout.isPositive()) {
+			throw new IllegalArgumentException("timeouts must be positive");
+		}
+		if (maxQueuedResponseBytes < 1 || bufferMemoryBudget < 1) {
+			throw new IllegalArgumentException("memory limits must be positive");
+		}
+	}
+
+	public static ServerConfig defaults() {
+		return builder().build();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static class Builder {
+
+		private TransportMode transportMode = TransportMode.THREAD_PER_CONNECTION;
+		private int eventLoopThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		private long maxPooledBytes = 64L << 20; // 64 MiB
+		private boolean pipelining = false;
+		private long maxCredits = 8192;
+		private int maxCreditsPerConnection = 512;
+		private int maxConnections = 1024;
+		private int maxUnauthenticatedConnections = 128;
+		private int maxRequestsPerConnection = 64;
+		private int acceptBacklog = 128;
+		private int acceptors = 1;
+		private Duration idleTimeout = Duration.ofMinutes(15);
+		private Duration sessionIdleTimeout = Duration.ofMinutes(15);
+		private long maxQueuedResponseBytes = 4L << 20; // 4 MiB
+		private int maxTransferSize = TransferSizePolicy.MAX_TRANSFER_SIZE;
+		private long transferMemoryBudget = 512L << 20; // 512 MiB
+		private int backendBlockSize = 1 << 16; // 64 KiB
+		private Duration requestTimeout = Duration.ofSeconds(30);
+		private long bufferMemoryBudget = 1L << 30; // 1 GiB
+		private boolean trustLoopback = false;
+		private boolean timeDispatch = false;
+
+		private Builder() {
+		}
+
+		public Builder transportMode(TransportMode transportMode) {
+			this.transportMode = transportMode;
+			return this;
+		}
+
+		public Builder eventLoopThreads(int eventLoopThreads) {
+			this.eventLoopThreads = eventLoopThreads;
+			return this;
+		}
+
+		public Builder maxPooledBytes(long maxPooledBytes) {
+			this.maxPooledBytes = maxPooledBytes;
+			return this;
+		}
+
+		public Builder pipelining(boolean pipelining) {
+			this.pipelining = pipelining;
+			return this;
+		}
+
+		public Builder maxCredits(long maxCredits) {
+			this.maxCredits = maxCredits;
+			return this;
+		}
+
+		public Builder maxCreditsPerConnection(int maxCreditsPerConnection) {
+			this.maxCreditsPerConnection = maxCreditsPerConnection;
+			return this;
+		}
+
+		public Builder maxConnections(int maxConnections) {
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		public Builder maxUnauthenticatedConnections(int maxUnauthenticatedConnections) {
+			this.maxUnauthenticatedConnections = maxUnauthenticatedConnections;
+			return this;
+		}
+
+		public Builder maxRequestsPerConnection(int maxRequestsPerConnection) {
+			this.maxRequestsPerConnection = maxRequestsPerConnection;
+			return this;
+		}
+
+		public Builder acceptBacklog(int acceptBacklog) {
+			this.acceptBacklog = acceptBacklog;
+			return this;
+		}
+
+		public Builder acceptors(int acceptors) {
+			this.acceptors = acceptors;
+			return this;
+		}
+
+		public Builder idleTimeout(Duration idleTimeout) {
+			this.idleTimeout = idleTimeout;
+			return this;
+		}
+
+		public Builder sessionIdleTimeout(Duration sessionIdleTimeout) {
+			this.sessionIdleTimeout = sessionIdleTimeout;
+			return this;
+		}
+
+		public Builder maxQueuedResponseBytes(long maxQueuedResponseBytes) {
+			this.maxQueuedResponseBytes = maxQueuedResponseBytes;
+			return this;
+		}
+
+		public Builder maxTransferSize(int maxTransferSize) {
+			this.maxTransferSize = maxTransferSize;
+			return this;
+		}
+
+		public Builder transferMemoryBudget(long transferMemoryBudget) {
+			this.transferMemoryBudget = transferMemoryBudget;
+			return this;
+		}
+
+		public Builder backendBlockSize(int backendBlockSize) {
+			this.backendBlockSize = backendBlockSize;
+			return this;
+		}
+
+		public Builder requestTimeout(Duration requestTimeout) {
+			this.requestTimeout = requestTimeout;
+			return this;
+		}
+
+		public Builder bufferMemoryBudget(long bufferMemoryBudget) {
+			this.bufferMemoryBudget = bufferMemoryBudget;
+			return this;
+		}
+
+		public Builder trustLoopback(boolean trustLoopback) {
+			this.trustLoopback = trustLoopback;
+			return this;
+		}
+
+		public Builder timeDispatch(boolean timeDispatch) {
+			this.timeDispatch = timeDispatch;
+			return this;
+		}
+
+		public ServerConfig build() {
+			return new ServerConfig(transportMode, eventLoopThreads, maxPooledBytes, pipelining, maxCredits, maxCreditsPerConnection, maxConnections,
+					maxUnauthenticatedConnections, maxRequestsPerConnection, acceptBacklog, acceptors, idleTimeout, sessionIdleTimeout,
+					maxQueuedResponseBytes, new TransferSizePolicy(maxTransferSize, transferMemoryBudget, backendBlockSize),
+					requestTimeout, bufferMemoryBudget, trustLoopback, timeDispatch);
+		}
+	}
+}
@@ -2,108 +2,130 @@ package org.cryptomator.jsmb;
 
 import org.cryptomator.jsmb.common.MalformedMessageException;
 import org.cryptomator.jsmb.common.SMBMessage;
-import org.cryptomator.jsmb.smb1.SMB1MessageParser;
-import org.cryptomator.jsmb.smb1.SMB1Negotiator;
-import org.cryptomator.jsmb.smb1.SmbComNegotiateRequest;
-import org.cryptomator.jsmb.smb2.*;
-import org.cryptomator.jsmb.util.Layouts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.lang.foreign.MemorySegment;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * A connection served by a dedicated thread using blocking I/O, on a {@link java.nio.channels.SocketChannel}, a {@link LoopbackChannel} or any
+ * other byte stream adopted via {@link TcpServer#adopt(ByteChannel, boolean)}.
+ */
 class TcpConnection implements Runnable {
 
 	private static final Logger LOG = LoggerFactory.getLogger(TcpConnection.class);
 
 	private final TcpServer server;
-	private final Socket socket;
-	private final Connection connection;
-	private final Negotiator negotiator;
+	private final ByteChannel channel;
+	private final GatheringByteChannel gatheringChannel;
+	private final ProtocolHandler protocolHandler;
+	private final RequestScheduler scheduler;
+	private final OutboundQueue outbound;
 
-	public TcpConnection(TcpServer server, Socket socket) {
+	public <C extends ByteChannel & GatheringByteChannel> TcpConnection(TcpServer server, C channel, AdmissionControl.Permit permit, boolean transportLevelSecurity) {
 		this.server = server;
-		this.socket = socket;
-		this.connection = new Connection(server.global);
-		this.negotiator = new Negotiator(server, connection);
+		this.channel = channel;
+		this.gatheringChannel = channel;
+		this.outbound = new OutboundQueue(server.config.maxQueuedResponseBytes());
+		this.protocolHandler = new ProtocolHandler(server, permit, this::closeAfterFlush, this::close, transportLevelSecurity, Transport.isLocalPeer(channel));
+		this.scheduler = new RequestScheduler(server.executor, server.config.pipelining(), server.config.maxRequestsPerConnection());
 	}
 
 	@Override
 	public void run() {
-		try (var in = socket.getInputStream()) {
-			byte[] transportHeader = new byte[4];
-			var transportHeaderSegment = MemorySegment.ofArray(transportHeader);
+		try (channel; var decoder = new FrameDecoder(server.bufferPool, FrameDecoder.DEFAULT_CHUNK_SIZE, server.maxFrameSize(), server.memoryMonitor::acceptsLargeRequests)) {
 			while (!Thread.interrupted()) {
-				// 1. determine size of SMB or SMB2 message:
+				// 1. stop reading while the client doesn't read its responses:
+				outbound.awaitUncongested();
+
+				// 2. read next SMB or SMB2 message, possibly already buffered by a previous read:
 				// see SMB1 https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb/f906c680-330c-43ae-9a71-f854e24aeee6
 				// see SMB2 https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/1dfacde4-b5c7-4494-8a14-a09d3ab4cc83
-				if (in.readNBytes(transportHeader, 0, transportHeader.length) != transportHeader.length) {
-					throw new EOFException();
-				}
-				int messageSize = transportHeaderSegment.get(Layouts.BE_INT32, 0); // "network byte order" is big endian
-				assert messageSize < 0x00FFFFFF; // first byte is always 0
+				var frame = decoder.next(channel);
 
-				// 2. read SMB or SMB2 message:
-				byte[] message = new byte[messageSize];
-				if (in.readNBytes(message, 0, messageSize) != messageSize) {
-					throw new EOFException();
-				}
-				var messageSegment = MemorySegment.ofArray(message).asReadOnly();
-
-				// 3. determine protocol and handle message:
-				if (SMB1MessageParser.isSmb1(messageSegment)) {
-					handleSmb1Packet(messageSegment);
-				} else if (SMB2MessageParser.isSmb2(messageSegment)) {
-					handleSmb2Packet(messageSegment);
-				} else {
-					throw new MalformedMessageException("Unknown protocol");
+				// 3. determine protocol and handle message, either on this thread or concurrently:
+				try {
+					scheduler.dispatch(frame.segment(), () -> process(frame));
+				} catch (InterruptedException | RejectedExecutionException e) {
+					frame.close();
+					throw e;
 				}
 			}
-		} catch (EOFException e) {
+		} catch (EOFException | ClosedChannelException e) {
 			LOG.debug("Connection closed");
-		} catch (MalformedMessageException | IOException e) {
+		} catch (RejectedExecutionException e) {
+			LOG.debug("Executor shut down, closing connection");
+		} catch (IOException e) {
 			LOG.error("Exception while reading packet", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			protocolHandler.close();
+			outbound.close();
 		}
 	}
 
-	private void handleSmb1Packet(MemorySegment segment) throws MalformedMessageException {
-		var msg = SMB1MessageParser.parse(segment);
-		var response = switch (msg) {
-			case SmbComNegotiateRequest request -> new SMB1Negotiator(server, connection).negotiate(request);
-			default -> throw new MalformedMessageException("Command not implemented: " + msg.command());
-		};
-		writeResponse(response);
-	}
-
-	private void handleSmb2Packet(MemorySegment segment) throws MalformedMessageException {
-		int nextCommand = 0;
-		do {
-			var msg = SMB2MessageParser.parse(segment.asSlice(nextCommand));
-			var response = switch (msg) {
-				case NegotiateRequest request -> negotiator.negotiate(request);
-				case SessionSetupRequest request -> negotiator.sessionSetup(request);
-				default -> throw new MalformedMessageException("Command not implemented: " + msg.header().command());
-			};
-			writeResponse(response);
-			nextCommand = msg.header().nextCommand();
-		} while (nextCommand != 0);
+	private void process(FrameDecoder.Frame frame) {
+		try (frame) {
+			if (frame.isTruncated()) {
+				protocolHandler.reject(frame.segment().asReadOnly(), this::writeResponse);
+			} else {
+				protocolHandler.handle(frame.segment().asReadOnly(), this::writeResponse);
+			}
+		} catch (MalformedMessageException e) {
+			LOG.error("Exception while reading packet", e);
+			close();
+		} catch (RuntimeException e) {
+			LOG.error("Exception while processing packet", e);
+			close();
+		}
 	}
 
 	private void writeResponse(SMBMessage response) {
+		outbound.add(FrameEncoder.encode(ByteBuffer.allocate(FrameEncoder.TRANSPORT_HEADER_SIZE), response));
 		try {
-			var bytes = response.serialize();
-			var out = socket.getOutputStream();
-			byte[] transportHeader = new byte[4];
-			var transportHeaderSegment = MemorySegment.ofArray(transportHeader);
-			transportHeaderSegment.set(Layouts.BE_INT32, 0, bytes.length);
-			out.write(transportHeader);
-			out.write(bytes);
-			out.flush();
+			outbound.flush(gatheringChannel);
+		} catch (ClosedChannelException e) {
+			LOG.debug("Connection closed before writing response");
+			close();
 		} catch (IOException e) {
 			LOG.error("Exception while writing response", e);
+			close();
+		}
+	}
+
+	/**
+	 * Closes the connection as soon as responses queued by concurrently processed requests have been written, without blocking the caller.
+	 */
+	private void closeAfterFlush() {
+		try {
+			server.executor.execute(() -> {
+				try {
+					outbound.flushFully(gatheringChannel);
+				} catch (IOException e) {
+					LOG.debug("Failed to write pending responses", e);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					close();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			close();
+		}
+	}
+
+	private void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOG.warn("Failed to close channel", e);
 		}
 	}
 }
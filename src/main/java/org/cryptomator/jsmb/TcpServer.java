@@ -1,56 +1,309 @@
 package org.cryptomator.jsmb;
 
+import org.cryptomator.jsmb.smb2.Dispatcher;
 import org.cryptomator.jsmb.smb2.Global;
+import org.cryptomator.jsmb.util.BufferPool;
+import org.cryptomator.jsmb.util.TimerWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class TcpServer implements AutoCloseable {
 
 	private static final Logger LOG = LoggerFactory.getLogger(TcpServer.class);
+	private static final Duration CLOSE_GRACE_PERIOD = Duration.ofSeconds(1);
 
-	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
-	private final ServerSocket serverSocket;
-	private final Thread acceptor;
+	final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	final LongAdder timedOutRequests = new LongAdder();
+	private final LongAdder refusedConnections = new LongAdder();
+	private final List<ServerSocketChannel> serverChannels;
+	private final Transport transport;
+	private final AdmissionControl admission;
+	private final List<Thread> acceptors;
+	private final Set<ProtocolHandler> connections = ConcurrentHashMap.newKeySet();
+	private final Lock connectionsLock = new ReentrantLock();
+	private final Condition allConnectionsClosed = connectionsLock.newCondition();
 	public final UUID guid;
 	public final Instant startTime;
 	public final Global global;
+	public final ServerConfig config;
+	public final BufferPool bufferPool;
+	public final TimerWheel timers;
+	final MemoryMonitor memoryMonitor;
+	final Dispatcher<ProtocolHandler> dispatcher;
 
-	private TcpServer(ServerSocket serverSocket) {
+	private TcpServer(List<ServerSocketChannel> serverChannels, ServerConfig config) throws IOException {
 		this.guid = UUID.randomUUID();
 		this.startTime = Instant.now();
-		this.serverSocket = serverSocket;
-		this.acceptor = Thread.ofVirtual().name("TCP Connection Listener").uncaughtExceptionHandler(this::handleAcceptException).start(this::acceptConnections);
-		this.global = new Global();
+		this.timers = TimerWheel.start("SMB Timer", Duration.ofMillis(100));
+		this.global = new Global(config.maxCredits(), config.maxCreditsPerConnection(), timers, config.sessionIdleTimeout());
+		this.config = config;
+		this.bufferPool = new BufferPool(config.maxPooledBytes());
+		this.dispatcher = ProtocolHandler.createDispatcher(config.timeDispatch());
+		this.serverChannels = serverChannels;
+		this.transport = Transport.create(this, config);
+		this.admission = new AdmissionControl(config.maxConnections(), config.maxUnauthenticatedConnections());
+		this.memoryMonitor = new MemoryMonitor(bufferPool, config.bufferMemoryBudget(), timers, this::onMemoryPressure);
+		this.acceptors = new ArrayList<>(serverChannels.size());
+		for (var serverChannel : serverChannels) {
+			var acceptor = Thread.ofVirtual().name("TCP Connection Listener " + acceptors.size()).uncaughtExceptionHandler(this::handleAcceptException);
+			acceptors.add(acceptor.start(() -> acceptConnections(serverChannel)));
+		}
+	}
+
+	/**
+	 * Sheds load in steps as memory pressure increases, and restores normal operation as it decreases.
+	 * @param pressure The new memory pressure
+	 */
+	private void onMemoryPressure(MemoryMonitor.Pressure pressure) {
+		global.creditBudget.throttle(pressure.compareTo(MemoryMonitor.Pressure.ELEVATED) >= 0);
+		admission.suspend(pressure.compareTo(MemoryMonitor.Pressure.HIGH) >= 0);
+	}
+
+	/**
+	 * @return The number of requests that have been answered with STATUS_IO_TIMEOUT, as they exceeded {@link ServerConfig#requestTimeout()}
+	 */
+	public long timedOutRequests() {
+		return timedOutRequests.sum();
+	}
+
+	/**
+	 * @return The number of connections that have been refused, as they exceeded {@link ServerConfig#maxConnections()} or {@link ServerConfig#maxUnauthenticatedConnections()}, or memory was low
+	 */
+	public long refusedConnections() {
+		return refusedConnections.sum();
+	}
+
+	/**
+	 * @return The dispatcher processing SMB2 requests, which keeps track of the time spent in each phase if {@link ServerConfig#timeDispatch()} is set
+	 */
+	public Dispatcher<?> dispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * @return The number of open connections
+	 */
+	public int connectionCount() {
+		return admission.connections();
+	}
+
+	/**
+	 * @return The largest transport frame accepted from clients, excluding the transport header
+	 */
+	int maxFrameSize() {
+		return config.transferSizes().maxTransferSize() + FrameDecoder.MAX_FRAME_OVERHEAD;
 	}
 
+	/**
+	 * @return The port this server is listening on, or {@code -1} if it only accepts in-memory connections
+	 */
 	public int getLocalPort() {
-		return serverSocket.getLocalPort();
+		return serverChannels.isEmpty() ? -1 : serverChannels.getFirst().socket().getLocalPort();
 	}
 
 	public static TcpServer start(int port) throws IOException {
-		var serverSocket = new ServerSocket(port);
-		LOG.info("Server started on port {}", serverSocket.getLocalPort());
-		return new TcpServer(serverSocket);
+		return start(port, ServerConfig.defaults());
 	}
 
-	private void acceptConnections() {
+	public static TcpServer start(int port, ServerConfig config) throws IOException {
+		var serverChannels = bind(port, config);
+		LOG.info("Server started on port {} using {} transport and {} acceptors", serverChannels.getFirst().socket().getLocalPort(), config.transportMode(), serverChannels.size());
+		return new TcpServer(serverChannels, config);
+	}
+
+	/**
+	 * Binds the listening sockets. If multiple acceptors are configured, all sockets are bound to the same port using {@code SO_REUSEPORT},
+	 * so that the kernel distributes incoming connections among them.
+	 */
+	private static List<ServerSocketChannel> bind(int port, ServerConfig config) throws IOException {
+		var first = ServerSocketChannel.open();
+		int acceptors = config.acceptors();
+		if (acceptors > 1 && !first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+			LOG.warn("SO_REUSEPORT not supported on this platform, using a single acceptor");
+			acceptors = 1;
+		}
+		List<ServerSocketChannel> channels = new ArrayList<>(acceptors);
+		try {
+			if (acceptors > 1) {
+				first.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+			}
+			channels.add(first.bind(new InetSocketAddress(port), config.acceptBacklog()));
+			int boundPort = first.socket().getLocalPort(); // in case of ephemeral port 0
+			for (int i = 1; i < acceptors; i++) {
+				var channel = ServerSocketChannel.open();
+				channels.add(channel);
+				channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+				channel.bind(new InetSocketAddress(boundPort), config.acceptBacklog());
+			}
+			return channels;
+		} catch (IOException e) {
+			first.close();
+			for (var channel : channels) {
+				channel.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts a server that doesn't listen on any port. Clients can only connect in the same process via {@link #connect()}.
+	 * @param config The server configuration
+	 * @return The started server
+	 * @throws IOException If the server can not be started
+	 */
+	public static TcpServer startInMemory(ServerConfig config) throws IOException {
+		LOG.info("Server started in memory");
+		return new TcpServer(List.of(), config);
+	}
+
+	/**
+	 * Connects a client within the same process, bypassing the network stack. Regardless of the configured {@link TransportMode}, the
+	 * connection is served by its own thread, while admission control and request processing are the same as for TCP connections.
+	 * @return The client's end of the connection
+	 * @throws IOException If the connection is refused
+	 */
+	public LoopbackChannel connect() throws IOException {
+		var channels = LoopbackChannel.pair(LoopbackChannel.DEFAULT_CAPACITY);
+		adopt(channels[1], false);
+		return channels[0];
+	}
+
+	/**
+	 * Serves an already established, reliable and ordered byte stream, which uses the same framing as Direct TCP.
+	 * <p>
+	 * This allows plugging in transports that are not provided by this library. E.g. for SMB over QUIC, a QUIC implementation accepts the
+	 * connection and hands each bidirectional stream to this method, with {@code transportLevelSecurity} set, as QUIC is secured by TLS 1.3.
+	 * If the client offers to accept transport level security during negotiation, the server will then agree.
+	 * @param stream The stream in blocking mode, to be closed by the server
+	 * @param transportLevelSecurity Whether the stream is encrypted and authenticated by the transport
+	 * @param <C> The stream type
+	 * @throws IOException If the connection is refused
+	 * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/1dfacde4-b5c7-4494-8a14-a09d3ab4cc83">Transport</a>
+	 */
+	public <C extends ByteChannel & GatheringByteChannel> void adopt(C stream, boolean transportLevelSecurity) throws IOException {
+		var permit = admission.tryAdmit();
+		if (permit == null) {
+			refusedConnections.increment();
+			stream.close();
+			throw new IOException("Connection refused");
+		}
+		executor.execute(new TcpConnection(this, stream, permit, transportLevelSecurity));
+	}
+
+	private void acceptConnections(ServerSocketChannel serverChannel) {
 		try {
 			while (!Thread.interrupted()) {
-				var clientSocket = serverSocket.accept();
-				executor.execute(new TcpConnection(this, clientSocket));
+				var clientChannel = serverChannel.accept();
+				var permit = admission.tryAdmit();
+				if (permit == null) {
+					refusedConnections.increment();
+					LOG.debug("Refusing connection: {} connections open, {} unauthenticated", admission.connections(), admission.unauthenticated());
+					clientChannel.close();
+					continue;
+				}
+				try {
+					transport.serve(clientChannel, permit);
+				} catch (IOException e) {
+					LOG.warn("Failed to serve connection", e);
+					permit.close();
+					clientChannel.close();
+				}
 			}
+		} catch (ClosedChannelException e) {
+			LOG.debug("Server socket closed");
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
+		}
+	}
+
+	void register(ProtocolHandler connection) {
+		connections.add(connection);
+	}
+
+	void deregister(ProtocolHandler connection) {
+		connections.remove(connection);
+		if (connections.isEmpty()) {
+			connectionsLock.lock();
+			try {
+				allConnectionsClosed.signalAll();
+			} finally {
+				connectionsLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Shuts down the server gracefully.
+	 * <p>
+	 * Stops accepting new connections. Each open connection is closed as soon as it completed the requests currently being processed and
+	 * wrote their responses. Connections still open after the timeout are closed forcibly, while requests still being processed run to
+	 * completion, without their responses being sent.
+	 * @param timeout Maximum time to wait for connections to close
+	 * @throws IOException If closing any resources fails
+	 */
+	public void shutdown(Duration timeout) throws IOException {
+		admission.close();
+		for (var acceptor : acceptors) {
+			acceptor.interrupt();
+		}
+		for (var serverChannel : serverChannels) {
+			serverChannel.close();
+		}
+		LOG.info("Shutting down, draining {} connections", connections.size());
+		for (var connection : connections) {
+			connection.drain();
+		}
+		if (!awaitConnectionsClosed(timeout)) {
+			LOG.info("Closing {} connections that did not drain within {}", connections.size(), timeout);
+			for (var connection : connections) {
+				connection.abort();
+			}
+		}
+		transport.close();
+		executor.close();
+		memoryMonitor.close();
+		bufferPool.close();
+		timers.close();
+	}
+
+	private boolean awaitConnectionsClosed(Duration timeout) {
+		long remainingNanos = timeout.toNanos();
+		connectionsLock.lock();
+		try {
+			while (!connections.isEmpty()) {
+				if (remainingNanos <= 0) {
+					return false;
+				}
+				remainingNanos = allConnectionsClosed.awaitNanos(remainingNanos);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return connections.isEmpty();
 		} finally {
-			executor.shutdown();
+			connectionsLock.unlock();
 		}
 	}
 
@@ -58,10 +311,13 @@ public class TcpServer implements AutoCloseable {
 		LOG.error("Uncaught exception in thread '{}'", thread.getName(), throwable);
 	}
 
+	/**
+	 * Shuts down the server, granting connections a grace period of one second to complete their requests.
+	 * @throws IOException If closing any resources fails
+	 * @see #shutdown(Duration)
+	 */
 	@Override
 	public void close() throws IOException {
-		acceptor.interrupt();
-		executor.close();
-		serverSocket.close();
+		shutdown(CLOSE_GRACE_PERIOD);
 	}
 }
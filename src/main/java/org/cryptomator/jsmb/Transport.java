@@ -0,0 +1,48 @@
+package org.cryptomator.jsmb;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Serves accepted client connections according to a {@link TransportMode}.
+ */
+interface Transport extends AutoCloseable {
+
+	static Transport create(TcpServer server, ServerConfig config) throws IOException {
+		return switch (config.transportMode()) {
+			case THREAD_PER_CONNECTION -> new BlockingTransport(server);
+			case EVENT_LOOP -> new EventLoopTransport(server, config.eventLoopThreads());
+		};
+	}
+
+	/**
+	 * Starts serving a newly accepted connection. The transport takes ownership of the channel.
+	 * @param channel A connected channel in blocking mode
+	 * @param permit The connection's admission, to be closed together with the connection
+	 * @throws IOException If the channel can not be prepared for this transport
+	 */
+	void serve(SocketChannel channel, AdmissionControl.Permit permit) throws IOException;
+
+	@Override
+	void close() throws IOException;
+
+	/**
+	 * Determines whether the peer runs on the same host, i.e. is connected via a loopback address or in memory.
+	 * @param channel The connection's channel
+	 * @return {@code true} if the peer is local
+	 */
+	static boolean isLocalPeer(Channel channel) {
+		try {
+			return switch (channel) {
+				case LoopbackChannel _ -> true;
+				case SocketChannel socket -> socket.getRemoteAddress() instanceof InetSocketAddress address && address.getAddress().isLoopbackAddress();
+				default -> false;
+			};
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,18 @@
+package org.cryptomator.jsmb;
+
+/**
+ * Determines how the {@link TcpServer} reads from and writes to client connections.
+ */
+public enum TransportMode {
+
+	/**
+	 * Each connection is served by its own virtual thread, which blocks while waiting for the next message.
+	 */
+	THREAD_PER_CONNECTION,
+
+	/**
+	 * Connections are multiplexed on a small set of selector threads. Only connections with a complete message occupy a (virtual) thread.
+	 */
+	EVENT_LOOP
+
+}
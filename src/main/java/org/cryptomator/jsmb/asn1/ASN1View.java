@@ -0,0 +1,211 @@
+package org.cryptomator.jsmb.asn1;
+
+import org.cryptomator.jsmb.util.Layouts;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DER-encoded ASN.1 node, read in place from the memory containing it.
+ * <p>
+ * Reading a node only decodes its identifier and length octets. Children are decoded when they are accessed, and content is only copied
+ * when requested via {@link #contentBytes()}.
+ * <p>
+ * Tokens are parsed before the client is authenticated, so the effort spent on them is bounded: nodes must not be nested deeper than
+ * {@value MAX_DEPTH} levels, identifiers must not exceed {@value MAX_IDENTIFIER_LENGTH} bytes, lengths must not be encoded in more than
+ * {@value MAX_LENGTH_OCTETS} bytes, and no node may exceed its parent.
+ *
+ * @see <a href="https://www.itu.int/ITU-T/studygroups/com17/languages/X.690-0207.pdf">ITU-T X.690</a>
+ */
+public final class ASN1View {
+
+	public static final int MAX_DEPTH = 16;
+	public static final int MAX_IDENTIFIER_LENGTH = 4;
+	public static final int MAX_LENGTH_OCTETS = 4;
+
+	private final MemorySegment segment; // identifier, length and content octets
+	private final int identifierLength;
+	private final int contentOffset;
+	private final int depth;
+
+	private ASN1View(MemorySegment segment, int identifierLength, int contentOffset, int depth) {
+		this.segment = segment;
+		this.identifierLength = identifierLength;
+		this.contentOffset = contentOffset;
+		this.depth = depth;
+	}
+
+	/**
+	 * Reads the node at the beginning of the given segment.
+	 * @param segment The segment starting with a DER-encoded node, possibly followed by further data
+	 * @return The node
+	 * @throws IllegalArgumentException If the node is malformed or exceeds the segment
+	 */
+	public static ASN1View read(MemorySegment segment) throws IllegalArgumentException {
+		return read(segment, 0);
+	}
+
+	private static ASN1View read(MemorySegment segment, int depth) throws IllegalArgumentException {
+		if (depth >= MAX_DEPTH) {
+			throw new IllegalArgumentException("ASN.1 nodes nested deeper than " + MAX_DEPTH + " levels");
+		}
+		long available = segment.byteSize();
+		int offset = 0;
+
+		// identifier:
+		if (available < 2) {
+			throw new IllegalArgumentException("Truncated ASN.1 node");
+		}
+		if ((segment.get(Layouts.BYTE, offset++) & 0b0001_1111) == 0b0001_1111) {
+			// if last 5 bits of first byte are all 1, the identifier continues up to and including the first byte without MSB set
+			byte b;
+			do {
+				if (offset >= MAX_IDENTIFIER_LENGTH || offset >= available) {
+					throw new IllegalArgumentException("ASN.1 identifier too long");
+				}
+				b = segment.get(Layouts.BYTE, offset++);
+			} while ((b & 0b1000_0000) == 0b1000_0000);
+		}
+		int identifierLength = offset;
+
+		// length:
+		if (offset >= available) {
+			throw new IllegalArgumentException("Truncated ASN.1 node");
+		}
+		int firstLengthByte = segment.get(Layouts.BYTE, offset++) & 0xFF;
+		long length;
+		if (firstLengthByte == 0b1000_0000) {
+			throw new IllegalArgumentException("Indefinite length encoding not supported");
+		} else if ((firstLengthByte & 0b1000_0000) == 0) {
+			length = firstLengthByte;
+		} else {
+			int n = firstLengthByte & 0b0111_1111;
+			if (n > MAX_LENGTH_OCTETS || offset + n > available) {
+				throw new IllegalArgumentException("Unsupported number of bytes for length encoding: " + n);
+			}
+			length = 0;
+			for (int i = 0; i < n; i++) {
+				length = (length << 8) | segment.get(Layouts.BYTE, offset++) & 0xFF;
+			}
+		}
+		if (length > available - offset) {
+			throw new IllegalArgumentException("ASN.1 node length " + length + " exceeds available " + (available - offset) + " bytes");
+		}
+		return new ASN1View(segment.asSlice(0, offset + length), identifierLength, offset, depth);
+	}
+
+	/**
+	 * @return The total number of bytes of this node, including identifier and length octets
+	 */
+	public long size() {
+		return segment.byteSize();
+	}
+
+	/**
+	 * @return A copy of the identifier octets
+	 */
+	public byte[] identifier() {
+		return segment.asSlice(0, identifierLength).toArray(Layouts.BYTE);
+	}
+
+	/**
+	 * @param identifier An identifier, see {@link ASN1Id}
+	 * @return Whether this node has the given identifier
+	 */
+	public boolean hasIdentifier(byte[] identifier) {
+		return identifier.length == identifierLength && startsWith(segment, identifier);
+	}
+
+	public boolean isConstructed() {
+		return (segment.get(Layouts.BYTE, 0) & 0b0010_0000) == 0b0010_0000;
+	}
+
+	/**
+	 * @return The content octets, without copying them
+	 */
+	public MemorySegment content() {
+		return segment.asSlice(contentOffset);
+	}
+
+	/**
+	 * @return A copy of the content octets
+	 */
+	public byte[] contentBytes() {
+		return content().toArray(Layouts.BYTE);
+	}
+
+	/**
+	 * @param expected The expected content, e.g. an {@link OID}
+	 * @return Whether the content octets equal the given bytes
+	 */
+	public boolean contentEquals(byte[] expected) {
+		return segment.byteSize() - contentOffset == expected.length && startsWith(content(), expected);
+	}
+
+	/**
+	 * @param index The index of a child
+	 * @return The child at the given index
+	 * @throws IllegalArgumentException If this node is not constructed, has no such child or is malformed
+	 */
+	public ASN1View child(int index) throws IllegalArgumentException {
+		var content = content();
+		long offset = 0;
+		for (int i = 0; offset < content.byteSize(); i++) {
+			var child = childAt(content, offset);
+			if (i == index) {
+				return child;
+			}
+			offset += child.size();
+		}
+		throw new IllegalArgumentException("No child at index " + index);
+	}
+
+	/**
+	 * @param identifier An identifier, see {@link ASN1Id}
+	 * @return The first child with the given identifier, or {@code null} if there is none
+	 * @throws IllegalArgumentException If this node is not constructed or malformed
+	 */
+	public ASN1View findChild(byte[] identifier) throws IllegalArgumentException {
+		var content = content();
+		for (long offset = 0; offset < content.byteSize(); ) {
+			var child = childAt(content, offset);
+			if (child.hasIdentifier(identifier)) {
+				return child;
+			}
+			offset += child.size();
+		}
+		return null;
+	}
+
+	/**
+	 * @return All children
+	 * @throws IllegalArgumentException If this node is not constructed or malformed
+	 */
+	public List<ASN1View> children() throws IllegalArgumentException {
+		var content = content();
+		var children = new ArrayList<ASN1View>();
+		for (long offset = 0; offset < content.byteSize(); ) {
+			var child = childAt(content, offset);
+			children.add(child);
+			offset += child.size();
+		}
+		return children;
+	}
+
+	private ASN1View childAt(MemorySegment content, long offset) throws IllegalArgumentException {
+		if (!isConstructed()) {
+			throw new IllegalArgumentException("Primitive ASN.1 node has no children");
+		}
+		return read(content.asSlice(offset), depth + 1);
+	}
+
+	private static boolean startsWith(MemorySegment segment, byte[] prefix) {
+		for (int i = 0; i < prefix.length; i++) {
+			if (segment.get(Layouts.BYTE, i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
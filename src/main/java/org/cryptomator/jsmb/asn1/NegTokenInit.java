@@ -1,7 +1,5 @@
 package org.cryptomator.jsmb.asn1;
 
-import java.util.Arrays;
-
 /**
  * <pre>
  * NegotiationToken ::= CHOICE {
@@ -22,14 +20,14 @@ import java.util.Arrays;
  *
  * @see <a href="https://www.rfc-editor.org/rfc/rfc4178.html#section-4.2.1">RFC 4178 Section 4.2.1</a>
  */
-public record NegTokenInit(ASN1Node.ASN1Constructed negTokenInit) implements NegotiationToken {
+public record NegTokenInit(ASN1View negTokenInit) implements NegotiationToken {
 
 	private static final byte[] TAG_MECH_TYPES = ASN1Id.of(0xA0);
 	private static final byte[] TAG_MECH_TOKEN = ASN1Id.of(0xA2);
 
-	public static NegTokenInit parse(ASN1Node.ASN1Constructed negotiationToken) {
-		var sequence = (ASN1Node.ASN1Constructed) negotiationToken.findChildWithId(ASN1Id.SEQUENCE);
-		if (sequence == null) {
+	public static NegTokenInit parse(ASN1View negotiationToken) {
+		var sequence = negotiationToken.findChild(ASN1Id.SEQUENCE);
+		if (sequence == null || !sequence.isConstructed()) {
 			throw new IllegalArgumentException("Expected sequence node");
 		} else {
 			return new NegTokenInit(sequence);
@@ -37,21 +35,21 @@ public record NegTokenInit(ASN1Node.ASN1Constructed negTokenInit) implements Neg
 	}
 
 	public byte[][] getContentTypes() {
-		var node = getMechTypesNode().findChildWithId(ASN1Id.SEQUENCE);
-		if (node instanceof ASN1Node.ASN1Constructed sequence) {
+		var sequence = getMechTypesNode().findChild(ASN1Id.SEQUENCE);
+		if (sequence != null && sequence.isConstructed()) {
 			return sequence.children().stream()
-					.filter(c -> c instanceof ASN1Node.ASN1Primitive p && Arrays.equals(ASN1Id.OBJECT_IDENTIFIER, p.identifier()))
-					.map(c -> ((ASN1Node.ASN1Primitive) c).data())
+					.filter(c -> c.hasIdentifier(ASN1Id.OBJECT_IDENTIFIER))
+					.map(ASN1View::contentBytes)
 					.toArray(byte[][]::new);
 		} else {
 			throw new IllegalArgumentException("Expected sequence node");
 		}
 	}
 
-	private ASN1Node.ASN1Constructed getMechTypesNode() {
-		var node = negTokenInit.findChildWithId(TAG_MECH_TYPES);
-		if (node instanceof ASN1Node.ASN1Constructed c) {
-			return c;
+	private ASN1View getMechTypesNode() {
+		var node = negTokenInit.findChild(TAG_MECH_TYPES);
+		if (node != null && node.isConstructed()) {
+			return node;
 		} else {
 			throw new IllegalArgumentException("Expected constructed node");
 		}
@@ -64,18 +62,18 @@ public record NegTokenInit(ASN1Node.ASN1Constructed negTokenInit) implements Neg
 
 	// https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-nlmp/b34032e5-3aae-4bc6-84c3-c6d80eadf7f2
 	public byte[] getMechToken() {
-		var node = getMechTokenNode().findChildWithId(ASN1Id.OCTET_STRING);
-		if (node instanceof ASN1Node.ASN1Primitive p) {
-			return p.data();
+		var node = getMechTokenNode().findChild(ASN1Id.OCTET_STRING);
+		if (node != null) {
+			return node.contentBytes();
 		} else {
 			throw new IllegalArgumentException("Expected OCTET STRING node");
 		}
 	}
 
-	private ASN1Node.ASN1Constructed getMechTokenNode() {
-		var node = negTokenInit.findChildWithId(TAG_MECH_TOKEN);
-		if (node instanceof ASN1Node.ASN1Constructed c) {
-			return c;
+	private ASN1View getMechTokenNode() {
+		var node = negTokenInit.findChild(TAG_MECH_TOKEN);
+		if (node != null && node.isConstructed()) {
+			return node;
 		} else {
 			throw new IllegalArgumentException("Expected constructed node");
 		}
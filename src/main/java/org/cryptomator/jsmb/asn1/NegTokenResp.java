@@ -1,5 +1,7 @@
 package org.cryptomator.jsmb.asn1;
 
+import org.cryptomator.jsmb.util.Layouts;
+
 import java.util.HexFormat;
 
 /**
@@ -27,14 +29,14 @@ import java.util.HexFormat;
  *
  * @see <a href="https://www.rfc-editor.org/rfc/rfc4178.html#section-4.2.2">RFC 4178 Section 4.2.2</a>
  */
-public record NegTokenResp(ASN1Node.ASN1Constructed negTokenResp) implements NegotiationToken {
+public record NegTokenResp(ASN1View negTokenResp) implements NegotiationToken {
 
 	private static final byte[] TAG_NEG_STATE = ASN1Id.of(0xA0);
 	private static final byte[] TAG_RESPONSE_TOKEN = ASN1Id.of(0xA2);
 
-	public static NegTokenResp parse(ASN1Node.ASN1Constructed negotiationToken) {
-		var sequence = (ASN1Node.ASN1Constructed) negotiationToken.findChildWithId(ASN1Id.SEQUENCE);
-		if (sequence == null) {
+	public static NegTokenResp parse(ASN1View negotiationToken) {
+		var sequence = negotiationToken.findChild(ASN1Id.SEQUENCE);
+		if (sequence == null || !sequence.isConstructed()) {
 			throw new IllegalArgumentException("Expected sequence node");
 		} else {
 			return new NegTokenResp(sequence);
@@ -42,18 +44,18 @@ public record NegTokenResp(ASN1Node.ASN1Constructed negTokenResp) implements Neg
 	}
 
 	public int getNegState() {
-		var node = getNegStateNode().findChildWithId(ASN1Id.ENUMERATED);
-		if (node instanceof ASN1Node.ASN1Primitive p) {
-			return p.data()[0];
+		var node = getNegStateNode().findChild(ASN1Id.ENUMERATED);
+		if (node != null && node.content().byteSize() == 1) {
+			return node.content().get(Layouts.BYTE, 0);
 		} else {
 			throw new IllegalArgumentException("Expected enumerated value");
 		}
 	}
 
-	private ASN1Node.ASN1Constructed getNegStateNode() {
-		var node = negTokenResp.findChildWithId(TAG_NEG_STATE);
-		if (node instanceof ASN1Node.ASN1Constructed c) {
-			return c;
+	private ASN1View getNegStateNode() {
+		var node = negTokenResp.findChild(TAG_NEG_STATE);
+		if (node != null && node.isConstructed()) {
+			return node;
 		} else {
 			throw new IllegalArgumentException("Expected node with tag " + HexFormat.of().formatHex(TAG_NEG_STATE));
 		}
@@ -65,18 +67,18 @@ public record NegTokenResp(ASN1Node.ASN1Constructed negTokenResp) implements Neg
 	}
 
 	public byte[] getResponseToken() {
-		var node = getResponseTokenNode().findChildWithId(ASN1Id.OCTET_STRING);
-		if (node instanceof ASN1Node.ASN1Primitive p) {
-			return p.data();
+		var node = getResponseTokenNode().findChild(ASN1Id.OCTET_STRING);
+		if (node != null) {
+			return node.contentBytes();
 		} else {
 			throw new IllegalArgumentException("Expected octet string");
 		}
 	}
 
-	private ASN1Node.ASN1Constructed getResponseTokenNode() {
-		var node = negTokenResp.findChildWithId(TAG_RESPONSE_TOKEN);
-		if (node instanceof ASN1Node.ASN1Constructed c) {
-			return c;
+	private ASN1View getResponseTokenNode() {
+		var node = negTokenResp.findChild(TAG_RESPONSE_TOKEN);
+		if (node != null && node.isConstructed()) {
+			return node;
 		} else {
 			throw new IllegalArgumentException("Expected node with tag " + HexFormat.of().formatHex(TAG_RESPONSE_TOKEN));
 		}
@@ -85,9 +87,9 @@ public record NegTokenResp(ASN1Node.ASN1Constructed negTokenResp) implements Neg
 	/**
 	 * Creates a GSS negotation token response with state <pre>accept-incomplete</pre>
 	 * @param responseToken the mechanism-specific response token (in case of this project the NTLM server challenge)
-	 * @return a NegTokenResp structure
+	 * @return the DER-encoded NegTokenResp structure
 	 */
-	public static NegTokenResp acceptIncomplete(byte[] responseToken) {
+	public static byte[] acceptIncomplete(byte[] responseToken) {
 		var negTokenResp = ASN1Node.constructed(ASN1Id.SEQUENCE,
 				ASN1Node.constructed(ASN1Id.of(0xA0),
 						ASN1Node.primitive(ASN1Id.ENUMERATED, new byte[]{0x01}) // negState ENUMERATED accept-incomplete
@@ -100,7 +102,7 @@ public record NegTokenResp(ASN1Node.ASN1Constructed negTokenResp) implements Neg
 				)
 		);
 		var negotiationToken = ASN1Node.constructed(ASN1Id.of(0xA1), negTokenResp);
-		return new NegTokenResp(negotiationToken);
+		return negotiationToken.serialize();
 	}
 
 }
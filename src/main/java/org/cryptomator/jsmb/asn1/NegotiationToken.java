@@ -1,7 +1,6 @@
 package org.cryptomator.jsmb.asn1;
 
-import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.lang.foreign.MemorySegment;
 import java.util.HexFormat;
 
 /**
@@ -28,25 +27,27 @@ public sealed interface NegotiationToken permits NegTokenInit, NegTokenResp {
 	byte[] token();
 
 	static NegotiationToken parse(byte[] token) {
-		ASN1Node node = ASN1Node.parse(ByteBuffer.wrap(token));
-		if (node instanceof ASN1Node.ASN1Constructed constructed) {
-			return parse(constructed);
-		} else {
-			throw new IllegalArgumentException("Expected constructed node " + HexFormat.of().formatHex(token));
-		}
+		return parse(MemorySegment.ofArray(token));
 	}
 
-	private static NegotiationToken parse(ASN1Node.ASN1Constructed node) {
-		var innerNode = stripSpnegoHeader(node);
-		if (!(innerNode instanceof ASN1Node.ASN1Constructed negToken)) {
-			throw new IllegalArgumentException("Expected SPNEGO token, got " + node);
+	/**
+	 * Parses a token in place, see {@link ASN1View} for the limits applied.
+	 * @param token The DER-encoded token, optionally wrapped in a SPNEGO frame
+	 * @return The parsed token
+	 * @throws IllegalArgumentException If the token is malformed
+	 */
+	static NegotiationToken parse(MemorySegment token) throws IllegalArgumentException {
+		var node = ASN1View.read(token);
+		if (!node.isConstructed()) {
+			throw new IllegalArgumentException("Expected constructed node");
 		}
-		if (Arrays.equals(NEG_TOKEN_INIT_TAG, negToken.identifier())) {
+		var negToken = stripSpnegoHeader(node);
+		if (negToken.hasIdentifier(NEG_TOKEN_INIT_TAG)) {
 			return NegTokenInit.parse(negToken);
-		} else if (Arrays.equals(NEG_TOKEN_RESP_TAG, negToken.identifier())) {
+		} else if (negToken.hasIdentifier(NEG_TOKEN_RESP_TAG)) {
 			return NegTokenResp.parse(negToken);
 		} else {
-			throw new IllegalArgumentException("Expected SPNEGO token, got " + node);
+			throw new IllegalArgumentException("Expected SPNEGO token, got " + HexFormat.of().formatHex(negToken.identifier()));
 		}
 	}
 
@@ -56,11 +57,11 @@ public sealed interface NegotiationToken permits NegTokenInit, NegTokenResp {
 	 * @return The inner context token, if the outer token is in fact a SPNEGO token
 	 * @see <a href="https://datatracker.ietf.org/doc/html/rfc2743#page-83">RFC 2743, Page 83</a>
 	 */
-	private static ASN1Node stripSpnegoHeader(ASN1Node.ASN1Constructed node) {
-		if (Arrays.equals(ASN1Id.APPLICATION, node.identifier())) {
-			var oidNode = node.childAtIndex(0);
-			if (Arrays.equals(ASN1Id.OBJECT_IDENTIFIER, oidNode.identifier()) && oidNode instanceof ASN1Node.ASN1Primitive oid && Arrays.equals(OID.SPNEGO, oid.data())) {
-				return node.childAtIndex(1);
+	private static ASN1View stripSpnegoHeader(ASN1View node) {
+		if (node.hasIdentifier(ASN1Id.APPLICATION)) {
+			var oid = node.child(0);
+			if (oid.hasIdentifier(ASN1Id.OBJECT_IDENTIFIER) && oid.contentEquals(OID.SPNEGO)) {
+				return node.child(1);
 			}
 		}
 		return node; // fallback: leave original node unchanged
@@ -8,8 +8,15 @@ package org.cryptomator.jsmb.common;
  */
 public interface NTStatus {
 	int STATUS_SUCCESS = 0x00000000;
+	int STATUS_INVALID_PARAMETER = 0xC000000D;
 	int STATUS_MORE_PROCESSING_REQUIRED = 0xC0000016;
 	int STATUS_SMB_BAD_COMMAND = 0x00160002;
+	int STATUS_ACCESS_DENIED = 0xC0000022;
 	int STATUS_LOGON_FAILURE = 0xC000006D;
+	int STATUS_INSUFFICIENT_RESOURCES = 0xC000009A;
+	int STATUS_IO_TIMEOUT = 0xC00000B5;
 	int STATUS_NOT_SUPPORTED = 0xC00000BB;
+	int STATUS_REQUEST_NOT_ACCEPTED = 0xC00000D0;
+	int STATUS_USER_SESSION_DELETED = 0xC0000203;
+	int STATUS_NETWORK_SESSION_EXPIRED = 0xC000035C;
 }
@@ -1,7 +1,15 @@
 package org.cryptomator.jsmb.common;
 
+import java.lang.foreign.MemorySegment;
+
 public interface SMBMessage {
 
+	/**
+	 * The segments that make up this message, in the order they need to be sent over the network.
+	 * @return The message's segments, without copying their contents.
+	 */
+	MemorySegment[] segments();
+
 	/**
 	 * Serializes this message in order to send it over the network.
 	 * @return The serialized message.
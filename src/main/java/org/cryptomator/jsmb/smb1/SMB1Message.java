@@ -38,6 +38,10 @@ public sealed interface SMB1Message extends SMBMessage permits SmbComNegotiateRe
 
 	MemorySegment segment();
 
+	default MemorySegment[] segments() {
+		return new MemorySegment[]{segment()};
+	}
+
 	default byte[] serialize() {
 		var buf = segment().asByteBuffer();
 		var result = new byte[buf.remaining()];
@@ -32,7 +32,7 @@ public record SMB1Negotiator(TcpServer server, Connection connection) {
 			header.creditCharge((char) 0);
 			header.status(NTStatus.STATUS_SUCCESS);
 			header.command(Command.NEGOATIATE.value());
-			header.creditResponse((char) 1);
+			header.creditResponse(connection.credits.grant((char) 1, (char) 1)); // consumes the credit for MessageId 0
 			header.flags(SMB2Message.Flags.SERVER_TO_REDIR);
 			header.nextCommand(0);
 			header.messageId(0);
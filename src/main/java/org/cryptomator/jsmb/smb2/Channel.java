@@ -0,0 +1,19 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.ntlmv2.NtlmSession;
+
+/**
+ * A transport connection bound to a {@link Session}. A session has one channel per connection it is used on.
+ *
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/59d9bc2b-2ebc-4ef5-8a03-4ca6ab4e2f25">Per Channel</a>
+ */
+public class Channel {
+
+	public final Connection connection;
+	public NtlmSession ntlmSession = NtlmSession.create();
+	public byte[] signingKey = null;
+
+	Channel(Connection connection) {
+		this.connection = connection;
+	}
+}
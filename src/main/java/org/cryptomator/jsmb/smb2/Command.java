@@ -23,6 +23,14 @@ public enum Command {
 	SET_INFO(0x0011),
 	OPLOCK_BREAK(0x0012);
 
+	private static final Command[] BY_VALUE = new Command[OPLOCK_BREAK.value + 1];
+
+	static {
+		for (Command command : values()) {
+			BY_VALUE[command.value] = command;
+		}
+	}
+
 	private final char value;
 
 	Command(@Range(from = 0, to = 0xFFFF) int value) {
@@ -37,15 +45,22 @@ public enum Command {
 	/**
 	 * Returns the enum constant of this type with the specified value.
 	 * @param value numerical value of the command
-	 * @throws IllegalArgumentException if this enum type has no constant with the specified nam
+	 * @throws IllegalArgumentException if this enum type has no constant with the specified value
 	 * @return the enum constant with the specified value
 	 */
 	public static Command valueOf(char value) {
-		for (Command command : values()) {
-			if (command.value == value) {
-				return command;
-			}
+		var command = value < BY_VALUE.length ? BY_VALUE[value] : null;
+		if (command == null) {
+			throw new IllegalArgumentException("Unknown command value: " + (int) value);
 		}
-		throw new IllegalArgumentException("Unknown command value: " + value);
+		return command;
+	}
+
+	/**
+	 * @param value numerical value of a command
+	 * @return whether there is an enum constant with the specified value
+	 */
+	public static boolean isKnown(char value) {
+		return value < BY_VALUE.length && BY_VALUE[value] != null;
 	}
 }
@@ -0,0 +1,117 @@
+package org.cryptomator.jsmb.smb2;
+
+/**
+ * Tracks the message IDs a client is allowed to use, as granted by credits.
+ * <p>
+ * The window is stored as a fixed-size ring of bits, where a set bit denotes a granted but not yet used message ID. The lowest unused ID
+ * ({@code base}) only advances once all IDs below it have been used, while IDs may be used out of order. Hence, the span between
+ * {@code base} and the next ID to be granted ({@code end}) is limited by the ring's capacity.
+ *
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/0055d1e1-18fa-4c1c-8941-df7203d440c7">Connection.CommandSequenceWindow</a>
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/0326f784-0baf-45fd-9687-626859ef5a9b">Verifying the Sequence Number</a>
+ */
+public class CommandSequenceWindow {
+
+	private final long[] bits;
+	private final int mask;
+	private long base;
+	private long end;
+
+	/**
+	 * Creates a window containing only message ID 0.
+	 * @param capacity Maximum span between the lowest unused and the highest granted message ID. Will be rounded up to a power of two of at least 64.
+	 */
+	public CommandSequenceWindow(int capacity) {
+		int size = Math.max(Long.SIZE, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+		this.bits = new long[size / Long.SIZE];
+		this.mask = size - 1;
+		set(end++);
+	}
+
+	/**
+	 * The number of message IDs that can be added to the window without exceeding its capacity.
+	 * @return The maximum argument for {@link #extend(int)}
+	 */
+	public synchronized int available() {
+		return (int) (mask + 1 - (end - base));
+	}
+
+	/**
+	 * Adds the given number of message IDs at the high end of the window.
+	 * @param count Number of credits granted
+	 * @throws IllegalArgumentException If the window would exceed its capacity
+	 */
+	public synchronized void extend(int count) throws IllegalArgumentException {
+		if (count > available()) {
+			throw new IllegalArgumentException("Exceeds capacity");
+		}
+		for (int i = 0; i < count; i++) {
+			set(end++);
+		}
+	}
+
+	/**
+	 * Validates and removes the message IDs used by a request.
+	 * @param messageId The MessageId of the request
+	 * @param creditCharge The number of consecutive IDs used by the request, i.e. the CreditCharge (or 1, if the charge is 0)
+	 * @return {@code true} if all IDs were within the window, {@code false} if the request must be rejected
+	 */
+	public synchronized boolean consume(long messageId, int creditCharge) {
+		int charge = Math.max(1, creditCharge);
+		if (messageId < base || messageId >= end || end - messageId < charge) {
+			return false; // also catches overflow, as end - messageId is positive
+		}
+		for (long id = messageId; id < messageId + charge; id++) {
+			if (!isSet(id)) {
+				return false;
+			}
+		}
+		for (long id = messageId; id < messageId + charge; id++) {
+			clear(id);
+		}
+		advanceBase();
+		return true;
+	}
+
+	private void advanceBase() {
+		while (base < end) {
+			int index = (int) (base & mask);
+			long word = bits[index / Long.SIZE] >>> (index % Long.SIZE);
+			if (word != 0) {
+				base += Long.numberOfTrailingZeros(word);
+				return;
+			}
+			base += Long.SIZE - index % Long.SIZE; // skip remainder of this word
+		}
+		base = end;
+	}
+
+	private boolean isSet(long id) {
+		int index = (int) (id & mask);
+		return (bits[index / Long.SIZE] & (1L << index)) != 0;
+	}
+
+	private void set(long id) {
+		int index = (int) (id & mask);
+		bits[index / Long.SIZE] |= 1L << index;
+	}
+
+	private void clear(long id) {
+		int index = (int) (id & mask);
+		bits[index / Long.SIZE] &= ~(1L << index);
+	}
+
+	/**
+	 * @return The lowest message ID that has not been used yet
+	 */
+	public synchronized long lowestAvailable() {
+		return base;
+	}
+
+	/**
+	 * @return The lowest message ID that has not been granted yet
+	 */
+	public synchronized long nextUngranted() {
+		return end;
+	}
+}
@@ -0,0 +1,91 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.common.SMBMessage;
+import org.cryptomator.jsmb.util.Bytes;
+import org.cryptomator.jsmb.util.Layouts;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The responses to a compounded request, sent together in a single transport frame.
+ * <p>
+ * The responses are {@link #chain(List) chained} before they are sent: Each response except the last one is padded to an 8-byte boundary,
+ * and its {@link PacketHeader#nextCommand() NextCommand} field is set to the offset of the subsequent response.
+ *
+ * @param responses The chained responses in the order of the corresponding requests
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/46dd4182-62d3-4e30-9fe5-e2ec124edca1">Sending Compounded Responses</a>
+ */
+public record CompoundResponse(List<SMB2Message> responses) implements SMBMessage {
+
+	private static final int ALIGNMENT = 8;
+	private static final MemorySegment PADDING = MemorySegment.ofArray(new byte[ALIGNMENT]).asReadOnly();
+
+	/**
+	 * A single response within the compound.
+	 *
+	 * @param response The response
+	 * @param related Whether the request was a related operation, in which case the response must be flagged as related, too
+	 */
+	public record Part(SMB2Message response, boolean related) {
+	}
+
+	/**
+	 * A response with its final header and padding, as it is sent within a compound.
+	 *
+	 * @param header The header, with NextCommand and flags set
+	 * @param segment The body
+	 * @param padding The padding up to the next response, which is covered by the response's signature
+	 */
+	record Chained(PacketHeader header, MemorySegment segment, MemorySegment padding) implements SMB2Message {
+
+		@Override
+		public MemorySegment[] segments() {
+			return padding.byteSize() == 0 ? new MemorySegment[]{header.segment(), segment} : new MemorySegment[]{header.segment(), segment, padding};
+		}
+
+		@Override
+		public byte[] serialize() {
+			return Bytes.concat(header.segment().toArray(Layouts.BYTE), segment.toArray(Layouts.BYTE), padding.toArray(Layouts.BYTE));
+		}
+	}
+
+	/**
+	 * Sets the NextCommand field and the related flag of each response and pads each response except the last one.
+	 * @param parts The individual responses in the order of the corresponding requests
+	 * @return The responses as they are sent
+	 */
+	public static List<SMB2Message> chain(List<Part> parts) {
+		List<SMB2Message> result = new ArrayList<>(parts.size());
+		for (int i = 0; i < parts.size(); i++) {
+			var part = parts.get(i);
+			var body = part.response.segment();
+			var isLast = i == parts.size() - 1;
+			var size = PacketHeader.STRUCTURE_SIZE + body.byteSize();
+			var padding = isLast ? 0 : (ALIGNMENT - size % ALIGNMENT) % ALIGNMENT;
+			var header = PacketHeaderBuilder.copyOf(part.response.header());
+			header.nextCommand(isLast ? 0 : (int) (size + padding));
+			if (part.related) {
+				header.flags(part.response.header().flags() | SMB2Message.Flags.RELATED_OPERATIONS);
+			}
+			result.add(new Chained(header.build(), body, PADDING.asSlice(0, padding)));
+		}
+		return result;
+	}
+
+	@Override
+	public MemorySegment[] segments() {
+		List<MemorySegment> result = new ArrayList<>(responses.size() * 3);
+		for (var response : responses) {
+			result.addAll(Arrays.asList(response.segments()));
+		}
+		return result.toArray(MemorySegment[]::new);
+	}
+
+	@Override
+	public byte[] serialize() {
+		return Bytes.concat(Arrays.stream(segments()).map(s -> s.toArray(Layouts.BYTE)).toArray(byte[][]::new));
+	}
+}
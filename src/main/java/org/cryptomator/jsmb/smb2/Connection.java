@@ -2,9 +2,9 @@ package org.cryptomator.jsmb.smb2;
 
 import org.cryptomator.jsmb.smb2.negotiate.PreauthIntegrityCapabilities;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Connection parameters negotiated during the SMB2.0 dialect negotiation.
@@ -13,9 +13,22 @@ import java.util.UUID;
 public class Connection {
 
 	public final Global global;
+	public final CommandSequenceWindow commandSequenceWindow;
+	public final CreditManager credits;
+	public final boolean transportLevelSecurity;
+	public final boolean trustedPeer;
 
-	public Connection(Global global) {
+	/**
+	 * @param global The server's global state
+	 * @param transportLevelSecurity Whether the underlying transport is already secured, e.g. by the TLS 1.3 handshake of QUIC
+	 * @param trustedPeer Whether the client runs on the same host and is trusted, so neither signing nor encryption are required
+	 */
+	public Connection(Global global, boolean transportLevelSecurity, boolean trustedPeer) {
 		this.global = global;
+		this.transportLevelSecurity = transportLevelSecurity;
+		this.trustedPeer = trustedPeer;
+		this.commandSequenceWindow = new CommandSequenceWindow(2 * global.maxCreditsPerConnection); // leave room for IDs used out of order
+		this.credits = new CreditManager(global.creditBudget, commandSequenceWindow, global.maxCreditsPerConnection);
 	}
 
 	public int clientCapabilities;
@@ -37,8 +50,19 @@ public class Connection {
 	public boolean supportsChainedCompression;
 	public char[] RDMATransformIds;
 	public boolean supportsMultiCredit;
+	public boolean acceptTransportSecurity;
 
 	public char serverSecurityMode;
 
-	public Map<Long, Session> sessionTable = HashMap.newHashMap(1);
+	public Map<Long, Session> sessionTable = new ConcurrentHashMap<>(1);
+
+	/**
+	 * Unbinds all sessions from this connection. Sessions without any remaining channel are removed from the GlobalSessionTable.
+	 * Invoked when the connection is closed.
+	 */
+	public void closeSessions() {
+		for (var session : sessionTable.values()) {
+			session.unbind(this);
+		}
+	}
 }
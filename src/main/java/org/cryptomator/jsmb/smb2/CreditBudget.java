@@ -0,0 +1,77 @@
+package org.cryptomator.jsmb.smb2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The server-wide limit of credits that may be outstanding across all connections.
+ * Each outstanding credit allows a client to have one more request in flight.
+ */
+public class CreditBudget {
+
+	private final long maxOutstanding;
+	private final AtomicLong outstanding = new AtomicLong();
+	private final AtomicLong granted = new AtomicLong();
+	private volatile boolean throttled;
+
+	public CreditBudget(long maxOutstanding) {
+		this.maxOutstanding = maxOutstanding;
+	}
+
+	/**
+	 * Reserves up to the given number of credits.
+	 * @param wanted Number of credits to reserve
+	 * @param minimum Number of credits to reserve even if this exceeds the budget
+	 * @return The number of credits actually reserved
+	 */
+	long reserve(long wanted, long minimum) {
+		long current, reserved;
+		do {
+			current = outstanding.get();
+			reserved = Math.max(minimum, Math.min(wanted, maxOutstanding - current));
+		} while (!outstanding.compareAndSet(current, current + reserved));
+		granted.addAndGet(reserved);
+		return reserved;
+	}
+
+	void release(long credits) {
+		outstanding.addAndGet(-credits);
+	}
+
+	/**
+	 * The current load, i.e. the fraction of the budget held by clients.
+	 * @return A value between 0.0 and 1.0 (or slightly larger, if minimum grants exceeded the budget)
+	 */
+	public double load() {
+		return (double) outstanding.get() / maxOutstanding;
+	}
+
+	/**
+	 * Makes connections hand out fewer credits than consumed, so the number of concurrent requests decreases, e.g. under memory pressure.
+	 * @param throttled Whether to shrink credit grants
+	 */
+	public void throttle(boolean throttled) {
+		this.throttled = throttled;
+	}
+
+	public boolean isThrottled() {
+		return throttled;
+	}
+
+	public long maxOutstanding() {
+		return maxOutstanding;
+	}
+
+	/**
+	 * @return Number of credits currently held by all clients
+	 */
+	public long outstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * @return Total number of credits granted since server start
+	 */
+	public long granted() {
+		return granted.get();
+	}
+}
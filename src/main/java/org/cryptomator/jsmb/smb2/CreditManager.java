@@ -0,0 +1,99 @@
+package org.cryptomator.jsmb.smb2;
+
+/**
+ * Decides how many credits to grant to the client of a single connection.
+ * <p>
+ * The client's credit request is honored as long as both the connection's and the server's {@link CreditBudget budget} permit. When the
+ * server is under load, only consumed credits get replenished. Beyond the budget, credits are taken back by granting fewer than the client
+ * consumed, while making sure that the client is never left without any credits.
+ *
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/dc2a6dcd-ac17-4e2c-9e0f-72fdaa4a6e3e">Algorithm for the Granting of Credits</a>
+ */
+public class CreditManager {
+
+	/**
+	 * Fraction of the server's budget in use, above which the number of outstanding credits of a connection no longer grows.
+	 */
+	private static final double HIGH_LOAD = 0.75;
+
+	private final CreditBudget budget;
+	private final CommandSequenceWindow window;
+	private final int maxOutstanding;
+	private int outstanding;
+	private long granted;
+	private boolean released;
+
+	/**
+	 * @param budget The server-wide budget
+	 * @param window The connection's window of valid message IDs, which gets extended by each grant
+	 * @param maxOutstanding The maximum number of credits a client of this connection may hold
+	 */
+	public CreditManager(CreditBudget budget, CommandSequenceWindow window, int maxOutstanding) {
+		this.budget = budget;
+		this.window = window;
+		this.maxOutstanding = maxOutstanding;
+		this.outstanding = (int) budget.reserve(1, 1); // the first request may be sent without being granted any credits
+	}
+
+	/**
+	 * Consumes the credits charged for a request and determines the number of credits to grant in its response.
+	 * @param requestHeader The header of the request
+	 * @return The CreditResponse to send
+	 */
+	public char grant(PacketHeader requestHeader) {
+		return grant(requestHeader.creditCharge(), requestHeader.creditRequest());
+	}
+
+	/**
+	 * Consumes the credits charged for a request and determines the number of credits to grant in its response.
+	 * @param creditCharge The CreditCharge of the request
+	 * @param creditRequest The CreditRequest of the request
+	 * @return The CreditResponse to send
+	 */
+	public synchronized char grant(char creditCharge, char creditRequest) {
+		if (released) {
+			return 0;
+		}
+		int charge = Math.min(Math.max(1, creditCharge), outstanding);
+		outstanding -= charge;
+		budget.release(charge);
+
+		int wanted = Math.min(Math.max(1, creditRequest), Math.min(maxOutstanding - outstanding, window.available()));
+		if (budget.isThrottled()) {
+			wanted = Math.min(wanted, charge / 2);
+		} else if (budget.load() > HIGH_LOAD) {
+			wanted = Math.min(wanted, charge);
+		}
+		int minimum = outstanding == 0 ? 1 : 0; // never reduce the client's credits to zero
+		int grant = (int) budget.reserve(Math.max(wanted, minimum), minimum);
+		window.extend(grant);
+		outstanding += grant;
+		granted += grant;
+		return (char) grant;
+	}
+
+	/**
+	 * Returns all outstanding credits of this connection to the server's budget. Invoked when the connection terminates.
+	 */
+	public synchronized void release() {
+		if (!released) {
+			released = true;
+			budget.release(outstanding);
+			outstanding = 0;
+		}
+	}
+
+	/**
+	 * @return Number of credits currently held by the client
+	 */
+	public synchronized int outstanding() {
+		return outstanding;
+	}
+
+	/**
+	 * @return Total number of credits granted to the client
+	 */
+	public synchronized long granted() {
+		return granted;
+	}
+}
@@ -0,0 +1,252 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.common.MalformedMessageException;
+import org.cryptomator.jsmb.common.SMBMessage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes SMB2 requests through an ordered chain of stages to the handler registered for their command.
+ * <p>
+ * Requests pass the inbound stages ({@link Phase#VERIFY_SIGNATURE}), then the handler, see {@link #dispatch(Object, SMB2Message)}. Once all
+ * requests of a frame have been handled, their responses pass the outbound stages ({@link Phase#SIGN}), see {@link #complete(Object, List)}.
+ * Compounded responses are chained before, so outbound stages see the final header and padding of each response. Features register their
+ * stages and handlers once, when the dispatcher is {@link #builder() built}. Handlers are looked up by command code, and dispatching a
+ * message neither allocates nor branches on message types.
+ * <p>
+ * Encryption and compression are not stages, as their transform headers wrap whole frames: They need to be removed before the messages of a
+ * frame can be parsed, and applied after its responses have been compounded.
+ *
+ * @param <C> Per-connection context passed to stages and handlers
+ */
+public final class Dispatcher<C> {
+
+	/**
+	 * The steps of processing a request, in order.
+	 */
+	public enum Phase {
+		VERIFY_SIGNATURE,
+		HANDLE,
+		SIGN
+	}
+
+	/**
+	 * Transforms or verifies a message on its way to or from a handler.
+	 * @param <C> Per-connection context
+	 */
+	@FunctionalInterface
+	public interface Stage<C> {
+
+		/**
+		 * @param context The connection's context
+		 * @param message The request (in inbound phases) or response (in outbound phases)
+		 * @return The message passed to the next stage, usually the same one
+		 * @throws MalformedMessageException If the message must not be processed any further
+		 */
+		SMB2Message process(C context, SMB2Message message) throws MalformedMessageException;
+	}
+
+	/**
+	 * Creates the response to a request of a specific type.
+	 * @param <C> Per-connection context
+	 * @param <T> Type of the request
+	 */
+	@FunctionalInterface
+	public interface Handler<C, T extends SMB2Message> {
+
+		/**
+		 * @param context The connection's context
+		 * @param request The request
+		 * @return The response
+		 * @throws MalformedMessageException If the request can not be processed
+		 */
+		SMB2Message handle(C context, T request) throws MalformedMessageException;
+	}
+
+	private final Stage<C>[] inbound;
+	private final Stage<C>[] handlers;
+	private final Stage<C>[] outbound;
+	private final Phase[] inboundPhases;
+	private final Phase[] outboundPhases;
+	private final LongAdder[] nanos; // null unless timed
+	private final LongAdder[] invocations;
+
+	private Dispatcher(List<Registration<C>> stages, Stage<C>[] handlers, boolean timed) {
+		var in = stages.stream().filter(r -> r.phase.compareTo(Phase.HANDLE) < 0).toList();
+		var out = stages.stream().filter(r -> r.phase.compareTo(Phase.HANDLE) > 0).toList();
+		this.inbound = in.stream().map(Registration::stage).toArray(Dispatcher::newStageArray);
+		this.inboundPhases = in.stream().map(Registration::phase).toArray(Phase[]::new);
+		this.outbound = out.stream().map(Registration::stage).toArray(Dispatcher::newStageArray);
+		this.outboundPhases = out.stream().map(Registration::phase).toArray(Phase[]::new);
+		this.handlers = handlers;
+		if (timed) {
+			this.nanos = new LongAdder[Phase.values().length];
+			this.invocations = new LongAdder[Phase.values().length];
+			for (int i = 0; i < nanos.length; i++) {
+				nanos[i] = new LongAdder();
+				invocations[i] = new LongAdder();
+			}
+		} else {
+			this.nanos = null;
+			this.invocations = null;
+		}
+	}
+
+	public static <C> Builder<C> builder() {
+		return new Builder<>();
+	}
+
+	/**
+	 * Passes a request through the inbound stages and its handler.
+	 * @param context The connection's context
+	 * @param request The request
+	 * @return The response, yet to be passed to {@link #complete(Object, List)}
+	 * @throws MalformedMessageException If any stage rejects the message or no handler is registered for the command
+	 */
+	public SMB2Message dispatch(C context, SMB2Message request) throws MalformedMessageException {
+		if (nanos != null) {
+			return dispatchTimed(context, request);
+		}
+		var message = request;
+		for (var stage : inbound) {
+			message = stage.process(context, message);
+		}
+		return handler(message.header().command()).process(context, message);
+	}
+
+	private SMB2Message dispatchTimed(C context, SMB2Message request) throws MalformedMessageException {
+		var message = request;
+		for (int i = 0; i < inbound.length; i++) {
+			message = timed(inbound[i], inboundPhases[i], context, message);
+		}
+		return timed(handler(message.header().command()), Phase.HANDLE, context, message);
+	}
+
+	/**
+	 * Passes the responses to the requests of a single frame through the outbound stages. If there are multiple responses, they are
+	 * {@link CompoundResponse#chain(List) chained} first.
+	 * @param context The connection's context
+	 * @param responses The responses, in the order of the corresponding requests
+	 * @return The message to send
+	 * @throws MalformedMessageException If any stage rejects a message
+	 */
+	public SMBMessage complete(C context, List<CompoundResponse.Part> responses) throws MalformedMessageException {
+		if (responses.size() == 1) {
+			return completeSingle(context, responses.getFirst().response());
+		}
+		var chained = CompoundResponse.chain(responses);
+		var result = new ArrayList<SMB2Message>(chained.size());
+		for (var response : chained) {
+			result.add(completeSingle(context, response));
+		}
+		return new CompoundResponse(result);
+	}
+
+	private SMB2Message completeSingle(C context, SMB2Message response) throws MalformedMessageException {
+		var message = response;
+		for (int i = 0; i < outbound.length; i++) {
+			message = nanos == null ? outbound[i].process(context, message) : timed(outbound[i], outboundPhases[i], context, message);
+		}
+		return message;
+	}
+
+	private SMB2Message timed(Stage<C> stage, Phase phase, C context, SMB2Message message) throws MalformedMessageException {
+		long start = System.nanoTime();
+		try {
+			return stage.process(context, message);
+		} finally {
+			nanos[phase.ordinal()].add(System.nanoTime() - start);
+			invocations[phase.ordinal()].increment();
+		}
+	}
+
+	private Stage<C> handler(char command) throws MalformedMessageException {
+		var handler = command < handlers.length ? handlers[command] : null;
+		if (handler == null) {
+			throw new MalformedMessageException("Command not implemented: " + (int) command);
+		}
+		return handler;
+	}
+
+	/**
+	 * @param phase A phase
+	 * @return Total time spent in the given phase, or {@code -1} if timing is disabled
+	 */
+	public long nanos(Phase phase) {
+		return nanos == null ? -1 : nanos[phase.ordinal()].sum();
+	}
+
+	/**
+	 * @param phase A phase
+	 * @return Number of times any stage of the given phase has been invoked, or {@code -1} if timing is disabled
+	 */
+	public long invocations(Phase phase) {
+		return invocations == null ? -1 : invocations[phase.ordinal()].sum();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <C> Stage<C>[] newStageArray(int length) {
+		return (Stage<C>[]) new Stage<?>[length];
+	}
+
+	private record Registration<C>(Phase phase, Stage<C> stage) {
+	}
+
+	public static class Builder<C> {
+
+		private final List<Registration<C>> stages = new ArrayList<>();
+		private final Stage<C>[] handlers = newStageArray(Command.values().length);
+		private boolean timed;
+
+		private Builder() {
+		}
+
+		/**
+		 * Adds a stage. Stages of the same phase run in the order they have been added.
+		 * @param phase The phase, must not be {@link Phase#HANDLE}
+		 * @param stage The stage
+		 * @return this
+		 */
+		public Builder<C> stage(Phase phase, Stage<C> stage) {
+			if (phase == Phase.HANDLE) {
+				throw new IllegalArgumentException("Use handler() to register handlers");
+			}
+			stages.add(new Registration<>(phase, stage));
+			return this;
+		}
+
+		/**
+		 * Registers the handler for a command.
+		 * @param command The command
+		 * @param requestType The type of request messages with this command
+		 * @param handler The handler
+		 * @return this
+		 * @param <T> Type of the request
+		 */
+		public <T extends SMB2Message> Builder<C> handler(Command command, Class<T> requestType, Handler<C, T> handler) {
+			if (handlers[command.value()] != null) {
+				throw new IllegalStateException("Handler for " + command + " already registered");
+			}
+			handlers[command.value()] = (context, message) -> handler.handle(context, requestType.cast(message));
+			return this;
+		}
+
+		/**
+		 * @param timed Whether to measure the time spent in each phase, see {@link Dispatcher#nanos(Phase)}
+		 * @return this
+		 */
+		public Builder<C> timed(boolean timed) {
+			this.timed = timed;
+			return this;
+		}
+
+		public Dispatcher<C> build() {
+			var sorted = new ArrayList<>(stages);
+			sorted.sort(Comparator.comparing(Registration::phase)); // stable
+			return new Dispatcher<>(sorted, handlers.clone(), timed);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.util.Layouts;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Sent in response to any request that failed, unless a command-specific response is defined for the status.
+ *
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/d4da8b67-c180-47e3-ba7a-d24214ac4aaa">SMB2 ERROR Response</a>
+ */
+public record ErrorResponse(PacketHeader header, MemorySegment segment) implements SMB2Message {
+
+	public static final char STRUCTURE_SIZE = 9;
+
+	public ErrorResponse {
+		segment.set(Layouts.LE_UINT16, 0, STRUCTURE_SIZE);
+	}
+
+	public ErrorResponse(PacketHeader header) {
+		this(header, MemorySegment.ofArray(new byte[STRUCTURE_SIZE])); // ErrorContextCount and ByteCount 0, followed by a single byte of ErrorData
+	}
+
+	/**
+	 * Creates an error response without any error data.
+	 * @param requestHeader The header of the failed request
+	 * @param status The status code
+	 * @param creditResponse The number of credits granted
+	 * @return The error response
+	 */
+	public static ErrorResponse create(PacketHeader requestHeader, int status, char creditResponse) {
+		var header = PacketHeader.builder();
+		header.creditCharge((char) 0);
+		header.status(status);
+		header.command(requestHeader.command());
+		header.creditResponse(creditResponse);
+		header.flags(SMB2Message.Flags.SERVER_TO_REDIR);
+		header.nextCommand(0);
+		header.messageId(requestHeader.messageId());
+		header.treeId(requestHeader.treeId());
+		header.sessionId(requestHeader.sessionId());
+		return new ErrorResponse(header.build());
+	}
+}
@@ -1,14 +1,44 @@
 package org.cryptomator.jsmb.smb2;
 
+import org.cryptomator.jsmb.util.TimerWheel;
+
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Holds global (i.e. per server) values, as specified in the SMB2 protocol.
  */
 public class Global {
 
-	Map<Long, Session> sessionTable = new HashMap<>();
+	Map<Long, Session> sessionTable = new ConcurrentHashMap<>();
 	Map<Long, Object> clientTable = new HashMap<>(); // TODO: create Client class
 
+	public final CreditBudget creditBudget;
+	final int maxCreditsPerConnection;
+	public final TimerWheel timers;
+	final Duration sessionIdleTimeout;
+
+	/**
+	 * @param maxCredits The maximum number of credits outstanding across all connections
+	 * @param maxCreditsPerConnection The maximum number of credits outstanding on a single connection
+	 * @param timers The server's timer wheel
+	 * @param sessionIdleTimeout The duration after which a session without any requests expires
+	 */
+	public Global(long maxCredits, int maxCreditsPerConnection, TimerWheel timers, Duration sessionIdleTimeout) {
+		this.creditBudget = new CreditBudget(maxCredits);
+		this.maxCreditsPerConnection = maxCreditsPerConnection;
+		this.timers = timers;
+		this.sessionIdleTimeout = sessionIdleTimeout;
+	}
+
+	/**
+	 * Number of sessions established across all connections.
+	 * @return The size of the GlobalSessionTable
+	 */
+	public int sessionCount() {
+		return sessionTable.size();
+	}
+
 }
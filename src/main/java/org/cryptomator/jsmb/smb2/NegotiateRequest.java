@@ -1,12 +1,12 @@
 package org.cryptomator.jsmb.smb2;
 
-import org.cryptomator.jsmb.smb2.negotiate.NegotiateContext;
+import org.cryptomator.jsmb.common.NTStatus;
+import org.cryptomator.jsmb.common.NTStatusException;
+import org.cryptomator.jsmb.smb2.negotiate.NegotiateContexts;
 import org.cryptomator.jsmb.util.Layouts;
 import org.cryptomator.jsmb.util.UInt16;
 
 import java.lang.foreign.MemorySegment;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -14,7 +14,25 @@ import java.util.UUID;
  *
  * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/e14db7ff-763a-4263-8b10-0c3944f52fc5">SMB2 NEGOTIATE Request Specification</a>
  */
-public record NegotiateRequest(PacketHeader header, MemorySegment segment) implements SMB2Message {
+public record NegotiateRequest(PacketHeader header, MemorySegment segment, NegotiateContexts negotiateContexts) implements SMB2Message {
+
+	/**
+	 * Parses a NEGOTIATE request including its negotiate contexts, which start at {@link #negotiateContextOffset()}.
+	 * @param header The packet header
+	 * @param segment The request body
+	 * @return The request, whose negotiate contexts are empty unless SMB 3.1.1 is supported by the client, or {@code null} if the negotiate context list is malformed
+	 */
+	public static NegotiateRequest parse(PacketHeader header, MemorySegment segment) {
+		var request = new NegotiateRequest(header, segment, NegotiateContexts.EMPTY);
+		if (!request.supportsDialect(Dialects.SMB3_1_1) || request.negotiateContextCount() == 0) {
+			return request;
+		}
+		try {
+			return new NegotiateRequest(header, segment, request.parseNegotiateContexts());
+		} catch (NTStatusException e) {
+			return new NegotiateRequest(header, segment, null);
+		}
+	}
 
 	public char structureSize() {
 		return segment.get(Layouts.LE_UINT16, 0); // should always be 36, regardless of dialects and negotiate contexts
@@ -58,33 +76,14 @@ public record NegotiateRequest(PacketHeader header, MemorySegment segment) imple
 		return UInt16.stream(dialects()).anyMatch(d -> d == dialect);
 	}
 
-	public Set<NegotiateContext> negotiateContexts() {
-		if (!supportsDialect(Dialects.SMB3_1_1)) {
-			return Set.of();
+	private NegotiateContexts parseNegotiateContexts() throws NTStatusException {
+		// NegotiateContextOffset is relative to the beginning of the header and MUST be 8-byte aligned, following the dialects:
+		long start = Integer.toUnsignedLong(negotiateContextOffset()) - PacketHeader.STRUCTURE_SIZE;
+		long endOfDialects = 36 + dialectCount() * Character.BYTES;
+		if (start < endOfDialects || start % 8 != 0 || start > segment.byteSize()) {
+			throw new NTStatusException(NTStatus.STATUS_INVALID_PARAMETER, "Invalid NegotiateContextOffset " + negotiateContextOffset());
 		}
-
-		// start of negotiate context is 8-byte-aligned
-		int endOfDialects = 36 + dialectCount() * Character.BYTES;
-		int padding = 8 - endOfDialects % 8;
-
-		MemorySegment contextsSegment = segment.asSlice(endOfDialects + padding);
-		Set<NegotiateContext> result = new HashSet<>();
-		for (int offset = 0, i = 0; i < negotiateContextCount(); i++) {
-			var ctx = NegotiateContext.parse(contextsSegment.asSlice(offset));
-			result.add(ctx);
-			var ctxSize = ctx.segmentSize();
-			var paddingSize = (8 - ctxSize % 8) % 8;
-			offset += ctxSize + paddingSize;
-		}
-		return result;
-	}
-
-	public <T extends NegotiateContext> T negotiateContext(Class<T> type) {
-		return negotiateContexts().stream()
-				.filter(type::isInstance)
-				.map(type::cast)
-				.findFirst()
-				.orElse(null);
+		return NegotiateContexts.parse(segment, start, negotiateContextCount());
 	}
 
 }
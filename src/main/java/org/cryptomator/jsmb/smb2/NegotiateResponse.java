@@ -5,7 +5,7 @@ import org.cryptomator.jsmb.util.Layouts;
 import org.cryptomator.jsmb.util.MemorySegments;
 
 import java.lang.foreign.MemorySegment;
-import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -16,6 +16,8 @@ import java.util.UUID;
 public record NegotiateResponse(PacketHeader header, MemorySegment segment) implements SMB2Message {
 
 	public static final char STRUCTURE_SIZE = 65;
+	private static final int FIXED_SIZE = 64; // StructureSize includes one byte of the variable-length part
+	private static final int CONTEXT_ALIGNMENT = 8;
 
 	public NegotiateResponse {
 		segment.set(Layouts.LE_UINT16, 0, STRUCTURE_SIZE);
@@ -86,39 +88,40 @@ public record NegotiateResponse(PacketHeader header, MemorySegment segment) impl
 		segment.set(Layouts.LE_INT32, 60, negotiateContextOffset);
 	}
 
-	public NegotiateResponse withSecurityBuffer(byte[] buffer) {
-		if (buffer.length > Character.MAX_VALUE) {
+	/**
+	 * Allocates a response with its final size and writes the security buffer and negotiate contexts right away. Fixed-size fields need to
+	 * be set afterwards.
+	 * @param header The packet header
+	 * @param securityBuffer The GSS token
+	 * @param contexts The negotiate contexts, each of which will be aligned to 8 bytes
+	 * @return The response
+	 */
+	public static NegotiateResponse create(PacketHeader header, byte[] securityBuffer, List<NegotiateContext> contexts) {
+		if (securityBuffer.length > Character.MAX_VALUE) {
 			throw new IllegalArgumentException("Buffer too large");
 		}
-		var segmentWithoutBuffer = segment.asSlice(0, 64);
-		var segmentWithBuffer = MemorySegments.concat(segmentWithoutBuffer, MemorySegment.ofArray(buffer));
-		var updatedResponse = new NegotiateResponse(header, segmentWithBuffer);
-		updatedResponse.securityBufferOffset((char) (header.structureSize() + 64));
-		updatedResponse.securityBufferLength((char) buffer.length);
-		return updatedResponse;
-	}
-
-	public NegotiateResponse withNegotiateContexts(Collection<NegotiateContext> contexts) {
-		var maxCombinedSize = contexts.stream().mapToInt(NegotiateContext::segmentSize).map(size -> size + 8).sum();
-		var contextsSegment = MemorySegment.ofArray(new byte[maxCombinedSize]);
-		// start of negotiate context is 8-byte-aligned
-		var pos = 0;
+		// compute layout:
+		long contextsOffset = MemorySegments.align(FIXED_SIZE + securityBuffer.length, CONTEXT_ALIGNMENT);
+		long size = FIXED_SIZE + securityBuffer.length;
 		for (var context : contexts) {
-			// add further padding to align to 8 bytes
-			if (pos % 8 != 0) {
-				pos += (8 - pos % 8) % 8;
-			}
-			var contextSize = context.segmentSize();
-			assert pos % 8 == 0;
-			MemorySegment.copy(context.segment(), 0, contextsSegment, pos, contextSize);
-			pos += contextSize;
+			size = MemorySegments.align(size, CONTEXT_ALIGNMENT) + context.segmentSize();
 		}
-		var paddedSegment = MemorySegments.pad(segment, 8);
-		var segmentWithContexts = MemorySegments.concat(paddedSegment, contextsSegment.asSlice(0, pos));
-		var updatedResponse = new NegotiateResponse(header, segmentWithContexts);
-		updatedResponse.negotiateContextOffset((int) (header.structureSize() + paddedSegment.byteSize()));
-		updatedResponse.negotiateContextCount((char) contexts.size());
-		return updatedResponse;
+
+		// write variable-length fields:
+		var segment = MemorySegment.ofArray(new byte[(int) Math.max(size, STRUCTURE_SIZE)]);
+		MemorySegment.copy(securityBuffer, 0, segment, Layouts.BYTE, FIXED_SIZE, securityBuffer.length);
+		long pos = contextsOffset;
+		for (var context : contexts) {
+			pos = MemorySegments.align(pos, CONTEXT_ALIGNMENT);
+			pos += context.writeTo(segment, pos);
+		}
+
+		var response = new NegotiateResponse(header, segment);
+		response.securityBufferOffset((char) (header.structureSize() + FIXED_SIZE));
+		response.securityBufferLength((char) securityBuffer.length);
+		response.negotiateContextOffset(contexts.isEmpty() ? 0 : (int) (header.structureSize() + contextsOffset));
+		response.negotiateContextCount((char) contexts.size());
+		return response;
 	}
 
 }
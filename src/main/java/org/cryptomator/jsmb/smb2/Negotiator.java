@@ -60,12 +60,22 @@ public record Negotiator(TcpServer server, Connection connection) {
 		connection.negotiateDialect = Dialects.SMB3_1_1;
 		connection.clientSecurityMode = request.securityMode();
 		connection.supportsMultiCredit = true;
-		connection.serverSecurityMode = (char) (SecurityMode.SIGNING_ENABLED | request.securityMode() & SecurityMode.SIGNING_REQUIRED);
-		connection.serverCapabilities = GlobalCapabilities.SMB2_GLOBAL_CAP_LARGE_MTU;
+		if (connection.trustedPeer) {
+			connection.serverSecurityMode = SecurityMode.SIGNING_ENABLED; // signing is always enabled, but never required
+		} else {
+			connection.serverSecurityMode = (char) (SecurityMode.SIGNING_ENABLED | request.securityMode() & SecurityMode.SIGNING_REQUIRED);
+		}
+		connection.serverCapabilities = GlobalCapabilities.SMB2_GLOBAL_CAP_LARGE_MTU; // no SMB2_GLOBAL_CAP_MULTI_CHANNEL, see sessionSetup()
 		LOG.debug("Client supports SMB 3.1.1");
 
+		var requestedContexts = request.negotiateContexts();
+		if (requestedContexts == null) {
+			LOG.debug("Invalid negotiate contexts");
+			return ErrorResponse.create(request.header(), NTStatus.STATUS_INVALID_PARAMETER, connection.credits.grant(request.header()));
+		}
+
 		// SMB2_PREAUTH_INTEGRITY_CAPABILITIES
-		var preauth = request.negotiateContext(PreauthIntegrityCapabilities.class); // 3.1.1 MUST include this
+		var preauth = requestedContexts.preauthIntegrityCapabilities(); // 3.1.1 MUST include this
 		connection.preauthIntegrityHashId = preauth.hashAlgorithms()[0];
 		if (!HashAlgorithm.isSupported(connection.preauthIntegrityHashId)) {
 			// TODO fail with STATUS_SMB_NO_PREAUTH_INTEGRITY_HASH_OVERLAP
@@ -74,8 +84,10 @@ public record Negotiator(TcpServer server, Connection connection) {
 		connection.preauthIntegrityHashValue = preAuthHashAlgorithm.compute(Bytes.concat(connection.preauthIntegrityHashValue, request.serialize()));
 
 		// SMB2_ENCRYPTION_CAPABILITIES
-		var requestedEncryptionCapabilities = request.negotiateContext(EncryptionCapabilities.class);
-		if (requestedEncryptionCapabilities != null) {
+		var requestedEncryptionCapabilities = requestedContexts.encryptionCapabilities();
+		if (requestedEncryptionCapabilities != null && connection.trustedPeer) {
+			connection.cipherId = EncryptionCapabilities.NO_COMMON_CIPHER; // don't waste CPU cycles on loopback connections
+		} else if (requestedEncryptionCapabilities != null) {
 			connection.cipherId = UInt16.stream(requestedEncryptionCapabilities.ciphers()).anyMatch(c -> c == EncryptionCapabilities.AES_256_GCM)
 					? EncryptionCapabilities.AES_256_GCM
 					: EncryptionCapabilities.NO_COMMON_CIPHER;
@@ -89,36 +101,30 @@ public record Negotiator(TcpServer server, Connection connection) {
 		connection.RDMATransformIds = new char[0]; // not yet supported
 
 		// SMB2_SIGNING_CAPABILITIES
-		var requestedSigningCapabilities = request.negotiateContext(SigningCapabilities.class);
-		if (request.negotiateContext(SigningCapabilities.class) != null) {
+		var requestedSigningCapabilities = requestedContexts.signingCapabilities();
+		if (requestedSigningCapabilities != null) {
 			connection.signingAlgorithmId = UInt16.stream(requestedSigningCapabilities.signingAlgorithms()).anyMatch(c -> c == SigningCapabilities.AES_GMAC)
 					? SigningCapabilities.AES_GMAC
 					: SigningCapabilities.AES_CMAC;
 		}
 
-		// SMB2_TRANSPORT_CAPABILITIES TODO
+		// SMB2_TRANSPORT_CAPABILITIES
+		var requestedTransportCapabilities = requestedContexts.transportCapabilities();
+		if (requestedTransportCapabilities != null && connection.transportLevelSecurity) {
+			connection.acceptTransportSecurity = (requestedTransportCapabilities.flags() & TransportCapabilities.ACCEPT_TRANSPORT_LEVEL_SECURITY) != 0;
+		}
 
 		// create response
 		var header = PacketHeader.builder();
 		header.creditCharge((char) 0);
 		header.status(NTStatus.STATUS_SUCCESS);
 		header.command(Command.NEGOATIATE.value());
-		header.creditResponse((char) 1);
+		header.creditResponse(connection.credits.grant(request.header()));
 		header.flags(SMB2Message.Flags.SERVER_TO_REDIR);
 		header.nextCommand(0);
 		header.messageId(request.header().messageId());
 		header.treeId(0);
 		header.sessionId(0L);
-		var response = new NegotiateResponse(header.build());
-		response.securityMode(connection.serverSecurityMode);
-		response.dialectRevision(Dialects.SMB3_1_1);
-		response.serverGuid(server.guid);
-		response.capabilities(connection.serverCapabilities);
-		response.maxTransactSize(connection.maxTransactSize);
-		response.maxReadSize(connection.maxReadSize);
-		response.maxWriteSize(connection.maxWriteSize);
-		response.systemTime(WinFileTime.now());
-		response.serverStartTime(0); // as per spec
 
 		List<NegotiateContext> contexts = new ArrayList<>();
 		// SMB2_PREAUTH_INTEGRITY_CAPABILITIES
@@ -129,27 +135,36 @@ public record Negotiator(TcpServer server, Connection connection) {
 			contexts.add(EncryptionCapabilities.build(connection.cipherId));
 		}
 		// SMB2_COMPRESSION_CAPABILITIES
-		if (request.negotiateContext(CompressionCapabilities.class) != null) {
+		if (requestedContexts.compressionCapabilities() != null) {
 			contexts.add(CompressionCapabilities.build(new char[]{CompressionCapabilities.ALG_NONE}, CompressionCapabilities.FLAG_NONE)); // compression not supported
 		}
 		// SMB2_RDMA_TRANSFORM_CAPABILITIES
-		if (request.negotiateContext(RDMATransformCapabilities.class) != null) {
+		if (requestedContexts.rdmaTransformCapabilities() != null) {
 			contexts.add(RDMATransformCapabilities.build(new char[]{RDMATransformCapabilities.TRANSFORM_NONE})); // rdma transform not supported
 		}
 		// SMB2_SIGNING_CAPABILITIES
-		if (request.negotiateContext(SigningCapabilities.class) != null) {
+		if (requestedSigningCapabilities != null) {
 			contexts.add(SigningCapabilities.build(connection.signingAlgorithmId));
 		}
 		// SMB2_TRANSPORT_CAPABILITIES
-		if (request.negotiateContext(TransportCapabilities.class) != null) {
-			contexts.add(TransportCapabilities.build(0)); // no transport level security
+		if (requestedTransportCapabilities != null) {
+			contexts.add(TransportCapabilities.build(connection.acceptTransportSecurity ? TransportCapabilities.ACCEPT_TRANSPORT_LEVEL_SECURITY : 0));
 		}
 
 		// gss token:
 		var gssToken = NegTokenInit2.createNtlmOnly();
 
-		// finalize response:
-		response = response.withSecurityBuffer(gssToken).withNegotiateContexts(contexts);
+		// allocate response with variable-length fields, then fill in fixed-size fields:
+		var response = NegotiateResponse.create(header.build(), gssToken, contexts);
+		response.securityMode(connection.serverSecurityMode);
+		response.dialectRevision(Dialects.SMB3_1_1);
+		response.serverGuid(server.guid);
+		response.capabilities(connection.serverCapabilities);
+		response.maxTransactSize(connection.maxTransactSize);
+		response.maxReadSize(connection.maxReadSize);
+		response.maxWriteSize(connection.maxWriteSize);
+		response.systemTime(WinFileTime.now());
+		response.serverStartTime(0); // as per spec
 
 		// update preauth hash
 		connection.preauthIntegrityHashValue = preAuthHashAlgorithm.compute(Bytes.concat(connection.preauthIntegrityHashValue, response.serialize()));
@@ -165,15 +180,21 @@ public record Negotiator(TcpServer server, Connection connection) {
 			// TODO disconnect without replying as per spec
 		}
 		final Session session;
+		final Channel channel;
+		boolean binding = (request.flags() & SessionSetupRequest.FLAG_BINDING) != 0;
 		if (request.header().sessionId() == 0L) {
 			session = Session.create(connection);
+			session.encryptData = !connection.trustedPeer;
 			Thread.currentThread().setName("Session-" + session.sessionId);
 			session.state = Session.State.IN_PROGRESS;
 			session.preauthIntegrityHashValue = connection.preauthIntegrityHashValue;
-		} else if ((request.flags() & SessionSetupRequest.FLAG_BINDING) != 0) {
-			// TODO implement according to step 4:
-			// https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/e545352b-9f2b-4c5e-9350-db46e4f6755e
-			throw new UnsupportedOperationException("multi channel not yet supported");
+			channel = session.channel(connection);
+		} else if (binding) {
+			// Binding requires verifying the request's signature with the session's signing key and comparing the authenticated user with
+			// the session's user. Neither signing keys nor user identities are available yet, so the server is not multichannel capable.
+			// https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/9a20f8ac-612a-4e0a-baab-30e922e7e1f5
+			LOG.debug("Refusing to bind session {}", request.header().sessionId());
+			return ErrorResponse.create(request.header(), NTStatus.STATUS_REQUEST_NOT_ACCEPTED, connection.credits.grant(request.header()));
 		} else {
 			// https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/b495e2da-8711-4772-b292-453be0394b49
 			// The server MUST look up the Session in Connection.SessionTable by using the SessionId in the SMB2 header of the request.
@@ -183,17 +204,19 @@ public record Negotiator(TcpServer server, Connection connection) {
 				// TODO fail with STATUS_USER_SESSION_DELETED
 				throw new UnsupportedOperationException("no idea which session to continue with. according to spec we should fail with STATUS_INVALID_PARAMETER");
 			}
+			channel = session.channel(connection);
 		}
-		assert session != null;
+		assert session != null && channel != null;
 		if (session.state == Session.State.EXPIRED || session.state == Session.State.VALID) {
 			// TODO reauthenticate according to https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/5ecc02fb-0e60-4cba-afeb-f13100a6e65e
 		}
 
 		// create response
+		char creditResponse = connection.credits.grant(request.header());
 		var header = PacketHeader.builder();
 		header.creditCharge((char) 0);
 		header.command(Command.SESSION_SETUP.value());
-		header.creditResponse((char) 1);
+		header.creditResponse(creditResponse);
 		header.flags(SMB2Message.Flags.SERVER_TO_REDIR);
 		header.nextCommand(0);
 		header.messageId(request.header().messageId());
@@ -202,26 +225,26 @@ public record Negotiator(TcpServer server, Connection connection) {
 
 		try {
 			var gssToken = NegotiationToken.parse(request.securityBuffer()); // security buffer MUST contain a GSS output token, see https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/8b90c335-5a64-4238-9813-84bd734599eb
-			switch (session.ntlmSession) {
+			switch (channel.ntlmSession) {
 				case NtlmSession.Initial s -> {
 					var awaitingAuthentication = s.negotiate(gssToken.token());
 					var negTokenResp = NegTokenResp.acceptIncomplete(awaitingAuthentication.serverChallenge());
 					header.status(NTStatus.STATUS_MORE_PROCESSING_REQUIRED);
-					var response = new SessionSetupResponse(header.build());
-					session.ntlmSession = awaitingAuthentication;
-					return response.withSecurityBuffer(negTokenResp.negTokenResp().serialize());
+					channel.ntlmSession = awaitingAuthentication;
+					return SessionSetupResponse.create(header.build(), negTokenResp);
 				}
 				case NtlmSession.AwaitingAuthentication s -> {
 					var authenticated = s.authenticate(gssToken.token(), "user", "password", "domain"); // FIXME hardcoded credentials
 					header.status(NTStatus.STATUS_SUCCESS);
-					session.ntlmSession = authenticated;
+					channel.ntlmSession = authenticated;
+					session.state = Session.State.VALID;
 					return new SessionSetupResponse(header.build());
 				}
 				case NtlmSession.Authenticated _ -> throw new IllegalStateException("Session already authenticated");
 			}
 		} catch (IllegalArgumentException e) {
-			// TODO fail with status SEC_E_INVALID_TOKEN
-			throw new UnsupportedOperationException("Not yet implemented", e);
+			LOG.debug("Invalid security token: {}", e.getMessage());
+			return ErrorResponse.create(request.header(), NTStatus.STATUS_INVALID_PARAMETER, creditResponse);
 		} catch (NTStatusException e) {
 			// TODO log?
 			header.status(e.status);
@@ -17,7 +17,7 @@ public record PacketHeader(MemorySegment segment) {
 
 	}
 
-	char creditCharge() {
+	public char creditCharge() {
 		return segment.get(Layouts.LE_UINT16, 6);
 	}
 
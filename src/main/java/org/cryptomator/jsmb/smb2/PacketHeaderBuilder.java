@@ -1,6 +1,7 @@
 package org.cryptomator.jsmb.smb2;
 
 import org.cryptomator.jsmb.util.Layouts;
+import org.cryptomator.jsmb.util.MemorySegments;
 
 import java.lang.foreign.MemorySegment;
 
@@ -15,6 +16,15 @@ public record PacketHeaderBuilder(MemorySegment segment) {
 		this(MemorySegment.ofArray(new byte[PacketHeader.STRUCTURE_SIZE]));
 	}
 
+	/**
+	 * Creates a builder, that is initialized with a copy of the given header.
+	 * @param header The header to copy
+	 * @return A new builder
+	 */
+	public static PacketHeaderBuilder copyOf(PacketHeader header) {
+		return new PacketHeaderBuilder(MemorySegments.copy(header.segment()));
+	}
+
 	public PacketHeaderBuilder creditCharge(char creditCharge) {
 		segment.set(Layouts.LE_UINT16, 6, creditCharge);
 		return this;
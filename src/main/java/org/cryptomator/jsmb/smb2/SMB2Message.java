@@ -8,6 +8,9 @@ import java.lang.foreign.MemorySegment;
 
 /**
  * A SMB 2 Message
+ * <p>
+ * Responses with variable-length fields compute their size up front and are allocated only once, see e.g.
+ * {@link NegotiateResponse#create(PacketHeader, byte[], java.util.List)}.
  *
  * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/fb188936-5050-48d3-b350-dc43059638a4">SMB2 Packet Header Specification</a>
  */
@@ -29,6 +32,10 @@ public interface SMB2Message extends SMBMessage {
 
 	MemorySegment segment();
 
+	default MemorySegment[] segments() {
+		return new MemorySegment[]{header().segment(), segment()};
+	}
+
 	default byte[] serialize() {
 		return Bytes.concat(header().segment().toArray(Layouts.BYTE), segment().toArray(Layouts.BYTE));
 	}
@@ -7,6 +7,18 @@ import java.lang.foreign.MemorySegment;
 
 public class SMB2MessageParser {
 
+	private static final RequestParser[] PARSERS = new RequestParser[Command.values().length];
+
+	static {
+		PARSERS[Command.NEGOATIATE.value()] = NegotiateRequest::parse;
+		PARSERS[Command.SESSION_SETUP.value()] = SessionSetupRequest::new;
+	}
+
+	@FunctionalInterface
+	private interface RequestParser {
+		SMB2Message parse(PacketHeader header, MemorySegment body);
+	}
+
 	public static boolean isSmb2(MemorySegment segment) {
 		if (segment.byteSize() < 66) { // 64 header + 2 structure size
 			return false;
@@ -23,10 +35,11 @@ public class SMB2MessageParser {
 		var headerSegment = segment.asSlice(0, PacketHeader.STRUCTURE_SIZE);
 		var bodySegment = segment.asSlice(PacketHeader.STRUCTURE_SIZE);
 		var header = new PacketHeader(headerSegment);
-		return switch (Command.valueOf(header.command())) {
-			case NEGOATIATE -> new NegotiateRequest(header, bodySegment);
-			case SESSION_SETUP -> new SessionSetupRequest(header, bodySegment);
-			default -> throw new MalformedMessageException("Unknown command: " + header.command());
-		};
+		char command = header.command();
+		var parser = command < PARSERS.length ? PARSERS[command] : null;
+		if (parser == null) {
+			throw new MalformedMessageException("Unknown command: " + (int) command);
+		}
+		return parser.parse(header, bodySegment);
 	}
 }
@@ -1,13 +1,14 @@
 package org.cryptomator.jsmb.smb2;
 
-import org.cryptomator.jsmb.ntlmv2.NtlmSession;
+import org.cryptomator.jsmb.util.TimerWheel;
 import org.jetbrains.annotations.Range;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class Session {
@@ -23,7 +24,7 @@ public class Session {
 	public final long sessionId;
 	public final long sessionGlobalId;
 	public final Connection connection;
-	public NtlmSession ntlmSession;
+	private TimerWheel.Timeout expiry;
 
 	private Session(Connection connection, @Range(from = 1L, to = Long.MAX_VALUE) long sessionId) {
 		if (sessionId < 1) {
@@ -33,7 +34,7 @@ public class Session {
 		this.connection = connection;
 		this.sessionId = sessionId;
 		this.sessionGlobalId = sessionId;
-		this.ntlmSession = NtlmSession.create();
+		this.channelList.add(new Channel(connection));
 	}
 
 	public State state;
@@ -44,9 +45,9 @@ public class Session {
 	public Map<?, ?> treeConnectTable = new HashMap<>();
 	public boolean isAnonymous = false;
 	public Instant creationTime = Instant.now();
-	public Instant idleTime = Instant.now();
+	public volatile Instant idleTime = Instant.now();
 	public boolean encryptData = true;
-	public List<?> channelList = new ArrayList<>();
+	public final List<Channel> channelList = new CopyOnWriteArrayList<>();
 	public byte[] preauthIntegrityHashValue;
 	public byte[] fullSessionKey = null;
 
@@ -59,7 +60,72 @@ public class Session {
 		var session = new Session(connection, SESSION_ID_GENERATOR.incrementAndGet());
 		connection.global.sessionTable.put(session.sessionGlobalId, session);
 		connection.sessionTable.put(session.sessionId, session);
+		session.scheduleExpiry(connection.global.sessionIdleTimeout);
 		return session;
 	}
 
+	/**
+	 * Looks up the channel of this session on the given connection.
+	 * @param connection The connection
+	 * @return The channel or {@code null} if the session is not bound to the connection
+	 */
+	public Channel channel(Connection connection) {
+		for (var channel : channelList) {
+			if (channel.connection == connection) {
+				return channel;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the channel of the given connection. Once no channel remains, the session gets closed.
+	 * @param connection A connection that has been closed
+	 */
+	public synchronized void unbind(Connection connection) {
+		channelList.removeIf(channel -> channel.connection == connection);
+		connection.sessionTable.remove(sessionId);
+		if (channelList.isEmpty()) {
+			close();
+		}
+	}
+
+	/**
+	 * Marks the session as used by a request, postponing its expiry.
+	 */
+	public void touch() {
+		idleTime = Instant.now();
+	}
+
+	private synchronized void scheduleExpiry(Duration delay) {
+		if (state != State.EXPIRED) {
+			expiry = connection.global.timers.schedule(delay, this::checkExpiry);
+		}
+	}
+
+	private void checkExpiry() {
+		var timeout = connection.global.sessionIdleTimeout;
+		var idle = Duration.between(idleTime, Instant.now());
+		if (idle.compareTo(timeout) >= 0) {
+			close();
+		} else {
+			scheduleExpiry(timeout.minus(idle)); // lazily reschedule instead of on every request
+		}
+	}
+
+	/**
+	 * Expires the session and removes it from the session tables of the global state and of all bound connections.
+	 */
+	public synchronized void close() {
+		state = State.EXPIRED;
+		if (expiry != null) {
+			expiry.cancel();
+		}
+		connection.global.sessionTable.remove(sessionGlobalId);
+		for (var channel : channelList) {
+			channel.connection.sessionTable.remove(sessionId);
+		}
+		connection.sessionTable.remove(sessionId);
+	}
+
 }
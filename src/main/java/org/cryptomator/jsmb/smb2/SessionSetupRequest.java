@@ -39,8 +39,11 @@ public record SessionSetupRequest(PacketHeader header, MemorySegment segment) im
 		return segment.get(Layouts.LE_INT64, 16);
 	}
 
-	public byte[] securityBuffer() {
-		return segment.asSlice(securityBufferOffset() - PacketHeader.STRUCTURE_SIZE, securityBufferLength()).toArray(Layouts.BYTE);
+	/**
+	 * @return The security buffer, as a slice of this message's segment
+	 */
+	public MemorySegment securityBuffer() {
+		return segment.asSlice(securityBufferOffset() - PacketHeader.STRUCTURE_SIZE, securityBufferLength());
 	}
 
 }
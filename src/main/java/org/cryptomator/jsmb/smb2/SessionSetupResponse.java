@@ -1,7 +1,6 @@
 package org.cryptomator.jsmb.smb2;
 
 import org.cryptomator.jsmb.util.Layouts;
-import org.cryptomator.jsmb.util.MemorySegments;
 
 import java.lang.foreign.MemorySegment;
 
@@ -15,6 +14,7 @@ public record SessionSetupResponse(PacketHeader header, MemorySegment segment) i
 	public static final char SMB2_SESSION_FLAG_ENCRYPT_DATA = 0x0004;
 
 	public static final char STRUCTURE_SIZE = 9;
+	private static final int FIXED_SIZE = 8; // StructureSize includes one byte of the variable-length part
 
 	public SessionSetupResponse {
 		segment.set(Layouts.LE_UINT16, 0, STRUCTURE_SIZE);
@@ -36,16 +36,22 @@ public record SessionSetupResponse(PacketHeader header, MemorySegment segment) i
 		segment.set(Layouts.LE_UINT16, 6, securityBufferLength);
 	}
 
-	public SessionSetupResponse withSecurityBuffer(byte[] buffer) {
-		if (buffer.length > Character.MAX_VALUE) {
+	/**
+	 * Allocates a response with its final size, including the security buffer.
+	 * @param header The packet header
+	 * @param securityBuffer The GSS token
+	 * @return The response
+	 */
+	public static SessionSetupResponse create(PacketHeader header, byte[] securityBuffer) {
+		if (securityBuffer.length > Character.MAX_VALUE) {
 			throw new IllegalArgumentException("Buffer too large");
 		}
-		var segmentWithoutBuffer = segment.asSlice(0, 8);
-		var segmentWithBuffer = MemorySegments.concat(segmentWithoutBuffer, MemorySegment.ofArray(buffer));
-		var updatedResponse = new SessionSetupResponse(header, segmentWithBuffer);
-		updatedResponse.securityBufferOffset((char) (header.structureSize() + 8));
-		updatedResponse.securityBufferLength((char) buffer.length);
-		return updatedResponse;
+		var segment = MemorySegment.ofArray(new byte[Math.max(FIXED_SIZE + securityBuffer.length, STRUCTURE_SIZE)]);
+		MemorySegment.copy(securityBuffer, 0, segment, Layouts.BYTE, FIXED_SIZE, securityBuffer.length);
+		var response = new SessionSetupResponse(header, segment);
+		response.securityBufferOffset((char) (header.structureSize() + FIXED_SIZE));
+		response.securityBufferLength((char) securityBuffer.length);
+		return response;
 	}
 
 }
@@ -0,0 +1,41 @@
+package org.cryptomator.jsmb.smb2;
+
+/**
+ * Determines the MaxReadSize, MaxWriteSize and MaxTransactSize offered to a client during negotiation.
+ * <p>
+ * Every connection is allowed to reserve buffers for one maximum-size transfer. The memory budget is divided among all open connections, so
+ * clients get large transfers while there are only few connections, but a flood of connections can not reserve more than the budget.
+ *
+ * @param maxTransferSize The largest transfer size offered to any client, between {@value MIN_TRANSFER_SIZE} and {@value MAX_TRANSFER_SIZE} bytes
+ * @param memoryBudget Total number of bytes that may be reserved for transfers across all connections
+ * @param blockSize Transfer sizes are multiples of this power of two, usually the block size of the storage backend
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/b39f253e-4963-40df-8dff-2f9040ebbeb1">Receiving an SMB2 NEGOTIATE Request</a>
+ */
+public record TransferSizePolicy(int maxTransferSize, long memoryBudget, int blockSize) {
+
+	public static final int MIN_TRANSFER_SIZE = 1 << 16; // 64 KiB, the limit without SMB2_GLOBAL_CAP_LARGE_MTU
+	public static final int MAX_TRANSFER_SIZE = 1 << 23; // 8 MiB, the largest size supported by Windows clients
+
+	public TransferSizePolicy {
+		if (maxTransferSize < MIN_TRANSFER_SIZE || maxTransferSize > MAX_TRANSFER_SIZE) {
+			throw new IllegalArgumentException("maxTransferSize must be between 64 KiB and 8 MiB");
+		}
+		if (memoryBudget < 0) {
+			throw new IllegalArgumentException("memoryBudget must not be negative");
+		}
+		if (Integer.bitCount(blockSize) != 1 || blockSize > maxTransferSize) {
+			throw new IllegalArgumentException("blockSize must be a power of two not exceeding maxTransferSize");
+		}
+	}
+
+	/**
+	 * Computes the transfer size for a newly negotiated connection.
+	 * @param connections Number of open connections, including the new one
+	 * @return The transfer size, at least {@value MIN_TRANSFER_SIZE} bytes and one block
+	 */
+	public int transferSize(int connections) {
+		long share = Math.min(maxTransferSize, memoryBudget / Math.max(1, connections));
+		long aligned = share & -blockSize; // round down to multiple of block size
+		return (int) Math.max(aligned, Math.max(MIN_TRANSFER_SIZE, blockSize));
+	}
+}
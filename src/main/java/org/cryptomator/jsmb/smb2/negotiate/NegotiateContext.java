@@ -1,7 +1,6 @@
 package org.cryptomator.jsmb.smb2.negotiate;
 
 import org.cryptomator.jsmb.util.Layouts;
-import org.cryptomator.jsmb.util.MemorySegments;
 
 import java.lang.foreign.MemorySegment;
 
@@ -41,9 +40,23 @@ public sealed interface NegotiateContext permits PreauthIntegrityCapabilities, E
 	}
 
 	default MemorySegment segment() {
-		var header = MemorySegment.ofArray(new byte[8]);
-		header.set(Layouts.LE_UINT16, 0, contextType());
-		header.set(Layouts.LE_UINT16, 2, (char) data().byteSize());
-		return MemorySegments.concat(header, data());
+		var segment = MemorySegment.ofArray(new byte[segmentSize()]);
+		writeTo(segment, 0);
+		return segment;
+	}
+
+	/**
+	 * Writes the context, consisting of its header and data, to the given position.
+	 * @param dst The segment to write to
+	 * @param offset The position within {@code dst}
+	 * @return The number of bytes written, i.e. the {@link #segmentSize()}
+	 */
+	default int writeTo(MemorySegment dst, long offset) {
+		var data = data();
+		dst.set(Layouts.LE_UINT16, offset, contextType());
+		dst.set(Layouts.LE_UINT16, offset + 2, (char) data.byteSize());
+		dst.set(Layouts.LE_INT32, offset + 4, 0); // reserved
+		MemorySegment.copy(data, 0, dst, offset + 8, data.byteSize());
+		return segmentSize();
 	}
 }
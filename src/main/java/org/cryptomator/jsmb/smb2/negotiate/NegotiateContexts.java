@@ -0,0 +1,94 @@
+package org.cryptomator.jsmb.smb2.negotiate;
+
+import org.cryptomator.jsmb.common.NTStatus;
+import org.cryptomator.jsmb.common.NTStatusException;
+import org.cryptomator.jsmb.util.Layouts;
+import org.cryptomator.jsmb.util.MemorySegments;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * The negotiate contexts of a NEGOTIATE request, parsed once and indexed by their context type.
+ *
+ * @see <a href="https://learn.microsoft.com/en-us/openspecs/windows_protocols/ms-smb2/b39f253e-4963-40df-8dff-2f9040ebbeb1">Receiving an SMB2 NEGOTIATE Request</a>
+ */
+public final class NegotiateContexts {
+
+	public static final NegotiateContexts EMPTY = new NegotiateContexts();
+
+	private final NegotiateContext[] byType = new NegotiateContext[NegotiateContext.SIGNING_CAPABILITIES + 1];
+
+	private NegotiateContexts() {
+	}
+
+	/**
+	 * Parses a list of negotiate contexts, each starting at an 8-byte-aligned offset.
+	 * <p>
+	 * Unknown context types are ignored. A context type occurring more than once is only allowed for
+	 * {@link NegotiateContext#NETNAME_NEGOTIATE_CONTEXT_ID}, in which case the first one is used.
+	 * @param segment The segment containing the negotiate contexts, which is assumed to start at an 8-byte-aligned offset within the message
+	 * @param start The offset after which the first negotiate context starts, at the next 8-byte boundary
+	 * @param count The number of negotiate contexts
+	 * @return The indexed negotiate contexts
+	 * @throws NTStatusException with {@link NTStatus#STATUS_INVALID_PARAMETER} if a context type is duplicated or the list is truncated
+	 */
+	public static NegotiateContexts parse(MemorySegment segment, long start, int count) throws NTStatusException {
+		var result = new NegotiateContexts();
+		long offset = start;
+		try {
+			for (int i = 0; i < count; i++) {
+				offset = MemorySegments.align(offset, 8);
+				char contextType = segment.get(Layouts.LE_UINT16, offset);
+				char dataLength = segment.get(Layouts.LE_UINT16, offset + 2);
+				if (!isKnown(contextType)) {
+					// the server MUST ignore unrecognized negotiate contexts
+				} else if (result.byType[contextType] == null) {
+					result.byType[contextType] = NegotiateContext.parse(segment.asSlice(offset, 8L + dataLength));
+				} else if (contextType != NegotiateContext.NETNAME_NEGOTIATE_CONTEXT_ID) {
+					throw new NTStatusException(NTStatus.STATUS_INVALID_PARAMETER, "Duplicate negotiate context " + (int) contextType);
+				}
+				offset += 8L + dataLength;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new NTStatusException(NTStatus.STATUS_INVALID_PARAMETER, "Negotiate context list exceeds request", e);
+		}
+		return result;
+	}
+
+	private static boolean isKnown(char contextType) {
+		return switch (contextType) {
+			case NegotiateContext.PREAUTH_INTEGRITY_CAPABILITIES, NegotiateContext.ENCRYPTION_CAPABILITIES, NegotiateContext.COMPRESSION_CAPABILITIES,
+				 NegotiateContext.NETNAME_NEGOTIATE_CONTEXT_ID, NegotiateContext.TRANSPORT_CAPABILITIES, NegotiateContext.RDMA_TRANSFORM_CAPABILITIES,
+				 NegotiateContext.SIGNING_CAPABILITIES -> true;
+			default -> false;
+		};
+	}
+
+	public PreauthIntegrityCapabilities preauthIntegrityCapabilities() {
+		return (PreauthIntegrityCapabilities) byType[NegotiateContext.PREAUTH_INTEGRITY_CAPABILITIES];
+	}
+
+	public EncryptionCapabilities encryptionCapabilities() {
+		return (EncryptionCapabilities) byType[NegotiateContext.ENCRYPTION_CAPABILITIES];
+	}
+
+	public CompressionCapabilities compressionCapabilities() {
+		return (CompressionCapabilities) byType[NegotiateContext.COMPRESSION_CAPABILITIES];
+	}
+
+	public NetnameNegotiateContextId netnameNegotiateContextId() {
+		return (NetnameNegotiateContextId) byType[NegotiateContext.NETNAME_NEGOTIATE_CONTEXT_ID];
+	}
+
+	public TransportCapabilities transportCapabilities() {
+		return (TransportCapabilities) byType[NegotiateContext.TRANSPORT_CAPABILITIES];
+	}
+
+	public RDMATransformCapabilities rdmaTransformCapabilities() {
+		return (RDMATransformCapabilities) byType[NegotiateContext.RDMA_TRANSFORM_CAPABILITIES];
+	}
+
+	public SigningCapabilities signingCapabilities() {
+		return (SigningCapabilities) byType[NegotiateContext.SIGNING_CAPABILITIES];
+	}
+}
@@ -0,0 +1,155 @@
+package org.cryptomator.jsmb.util;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of off-heap buffers, organized in power-of-two size classes.
+ * <p>
+ * Each buffer is allocated in its own {@link Arena}, so that buffers exceeding the pool's retention limit can be freed individually.
+ * Buffers are {@link #lease(long) leased} for the duration of a request and returned to the pool by {@link Lease#close() closing} the lease.
+ */
+public class BufferPool implements AutoCloseable {
+
+	public static final int MIN_SIZE_CLASS = 12; // 4 KiB
+	public static final int MAX_SIZE_CLASS = 24; // 16 MiB, enough for any NetBIOS frame
+
+	private final Deque<Buffer>[] freeLists;
+	private final long maxPooledBytes;
+	private final AtomicLong pooledBytes = new AtomicLong();
+	private final AtomicLong leasedBytes = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new buffer pool.
+	 * @param maxPooledBytes Maximum number of bytes kept in the pool while not leased
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public BufferPool(long maxPooledBytes) {
+		this.maxPooledBytes = maxPooledBytes;
+		this.freeLists = new Deque[MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1];
+		for (int i = 0; i < freeLists.length; i++) {
+			freeLists[i] = new ConcurrentLinkedDeque<>();
+		}
+	}
+
+	/**
+	 * Leases a buffer of at least the given size.
+	 * @param size Required size in bytes
+	 * @return A lease whose {@link Lease#segment() segment} has exactly the requested size
+	 * @throws IllegalArgumentException If the size exceeds the largest size class
+	 */
+	public Lease lease(long size) throws IllegalArgumentException {
+		if (size > 1L << MAX_SIZE_CLASS) {
+			throw new IllegalArgumentException("Requested buffer too large: " + size);
+		}
+		if (closed) {
+			throw new IllegalStateException("Pool closed");
+		}
+		int sizeClass = sizeClass(size);
+		var buffer = freeLists[sizeClass - MIN_SIZE_CLASS].pollFirst();
+		if (buffer != null) {
+			hits.incrementAndGet();
+			pooledBytes.addAndGet(-buffer.segment.byteSize());
+		} else {
+			misses.incrementAndGet();
+			var arena = Arena.ofShared();
+			buffer = new Buffer(arena, arena.allocate(1L << sizeClass, 64));
+		}
+		leasedBytes.addAndGet(buffer.segment.byteSize());
+		return new Lease(buffer, buffer.segment.asSlice(0, size));
+	}
+
+	static int sizeClass(long size) {
+		int bits = size <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(size - 1);
+		return Math.max(MIN_SIZE_CLASS, bits);
+	}
+
+	private void release(Buffer buffer) {
+		long size = buffer.segment.byteSize();
+		leasedBytes.addAndGet(-size);
+		if (!closed && pooledBytes.addAndGet(size) <= maxPooledBytes) {
+			freeLists[sizeClass(size) - MIN_SIZE_CLASS].offerFirst(buffer);
+			if (closed) {
+				close(); // pool has been closed concurrently, make sure the buffer doesn't stay in the pool
+			}
+		} else {
+			pooledBytes.addAndGet(-size);
+			buffer.arena.close();
+		}
+	}
+
+	/**
+	 * Current usage statistics of this pool.
+	 * @return A snapshot of the pool's counters
+	 */
+	public Stats stats() {
+		return new Stats(hits.get(), misses.get(), leasedBytes.get(), pooledBytes.get());
+	}
+
+	/**
+	 * Frees all pooled buffers. Buffers that are currently leased are freed when their lease is closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (var freeList : freeLists) {
+			Buffer buffer;
+			while ((buffer = freeList.pollFirst()) != null) {
+				pooledBytes.addAndGet(-buffer.segment.byteSize());
+				buffer.arena.close();
+			}
+		}
+	}
+
+	private record Buffer(Arena arena, MemorySegment segment) {
+	}
+
+	/**
+	 * A buffer leased from the pool. Closing the lease returns the buffer to the pool, after which its segment must no longer be used.
+	 */
+	public final class Lease implements AutoCloseable {
+
+		private final Buffer buffer;
+		private final MemorySegment segment;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Lease(Buffer buffer, MemorySegment segment) {
+			this.buffer = buffer;
+			this.segment = segment;
+		}
+
+		public MemorySegment segment() {
+			return segment;
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(false, true)) {
+				release(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Usage statistics.
+	 *
+	 * @param hits Number of leases served from pooled buffers
+	 * @param misses Number of leases that required a new allocation
+	 * @param leasedBytes Bytes currently in use by leases (rounded up to the size class)
+	 * @param pooledBytes Bytes currently kept in the pool for reuse
+	 */
+	public record Stats(long hits, long misses, long leasedBytes, long pooledBytes) {
+
+		public double hitRate() {
+			long total = hits + misses;
+			return total == 0 ? 0.0 : (double) hits / total;
+		}
+	}
+}
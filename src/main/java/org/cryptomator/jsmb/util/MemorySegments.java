@@ -40,6 +40,17 @@ public class MemorySegments {
 		return result;
 	}
 
+	/**
+	 * Rounds up an offset to the next multiple of the given alignment.
+	 * @param offset The offset
+	 * @param alignment The alignment, must be a power of two
+	 * @return The aligned offset
+	 */
+	public static long align(long offset, int alignment) {
+		assert Integer.bitCount(alignment) == 1;
+		return (offset + alignment - 1) & -alignment;
+	}
+
 	/**
 	 * Creates a new on-heap copy of the given segment, adding a padding in order to align the resulting segment to the given alignment.
 	 * @param segment original segment
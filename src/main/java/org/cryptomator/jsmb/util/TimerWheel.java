@@ -0,0 +1,204 @@
+package org.cryptomator.jsmb.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hierarchical timing wheel, which manages large numbers of timeouts at the cost of O(1) per schedule and cancel operation.
+ * <p>
+ * Time advances in fixed ticks. Each of the {@value LEVELS} levels consists of {@value SLOTS} slots, each slot spanning {@code SLOTS^level}
+ * ticks. Timeouts are stored in doubly linked lists per slot and move to the next lower level ("cascade") as their deadline approaches.
+ * Timeouts beyond the range of the highest level are parked in its furthest slot and re-inserted when it is reached.
+ * <p>
+ * Tasks are run on the wheel's thread and must not block. Objects that are used frequently should not reschedule their timeout on each use,
+ * but rather record the time of last use and reschedule the remainder when the timeout fires.
+ */
+public class TimerWheel implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int LEVELS = 4;
+	private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+	private final long tickNanos;
+	private final long startNanos;
+	private final Timeout[][] wheel = new Timeout[LEVELS][SLOTS];
+	private final Lock lock = new ReentrantLock();
+	private long currentTick;
+	private volatile boolean closed;
+
+	TimerWheel(long tickNanos, long startNanos) {
+		this.tickNanos = tickNanos;
+		this.startNanos = startNanos;
+		for (var level : wheel) {
+			for (int i = 0; i < SLOTS; i++) {
+				level[i] = new Timeout(null, 0); // sentinel
+			}
+		}
+	}
+
+	/**
+	 * Creates a timer wheel driven by a dedicated daemon thread.
+	 * @param name The thread name
+	 * @param tick The resolution of this timer
+	 * @return The started timer wheel
+	 */
+	public static TimerWheel start(String name, Duration tick) {
+		var timerWheel = new TimerWheel(tick.toNanos(), System.nanoTime());
+		Thread.ofPlatform().name(name).daemon().start(timerWheel::run);
+		return timerWheel;
+	}
+
+	private void run() {
+		while (!closed) {
+			advance(System.nanoTime());
+			LockSupport.parkNanos(tickNanos);
+		}
+	}
+
+	/**
+	 * Schedules a task to be run once the given delay elapsed, rounded up to whole ticks.
+	 * @param delay The delay
+	 * @param task The task to run on the timer thread
+	 * @return A handle to cancel the task
+	 */
+	public Timeout schedule(Duration delay, Runnable task) {
+		long ticks = Math.max(1, Math.ceilDiv(delay.toNanos(), tickNanos));
+		lock.lock();
+		try {
+			var timeout = new Timeout(task, currentTick + ticks);
+			insert(timeout);
+			return timeout;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Runs all tasks whose deadline is reached at the given time.
+	 * @param nowNanos The current time as per {@link System#nanoTime()}
+	 */
+	void advance(long nowNanos) {
+		long targetTick = (nowNanos - startNanos) / tickNanos;
+		List<Timeout> expired = new ArrayList<>();
+		lock.lock();
+		try {
+			while (currentTick < targetTick) {
+				currentTick++;
+				for (int level = LEVELS - 1; level > 0; level--) {
+					if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+						cascade(wheel[level][slot(currentTick, level)]);
+					}
+				}
+				var sentinel = wheel[0][slot(currentTick, 0)];
+				while (sentinel.next != sentinel) {
+					var timeout = sentinel.next;
+					timeout.unlink();
+					timeout.state = Timeout.EXPIRED;
+					expired.add(timeout);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		for (var timeout : expired) {
+			try {
+				timeout.task.run();
+			} catch (RuntimeException e) {
+				LOG.error("Timer task failed", e);
+			}
+		}
+	}
+
+	private void cascade(Timeout sentinel) {
+		var timeout = sentinel.next;
+		sentinel.next = sentinel.prev = sentinel;
+		while (timeout != sentinel) {
+			var next = timeout.next;
+			insert(timeout);
+			timeout = next;
+		}
+	}
+
+	private void insert(Timeout timeout) {
+		long delta = Math.min(timeout.deadline - currentTick, MAX_DELTA);
+		long tick = currentTick + delta;
+		int level = 0;
+		while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+			level++;
+		}
+		timeout.linkBefore(wheel[level][slot(tick, level)]);
+	}
+
+	private static int slot(long tick, int level) {
+		return (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+	}
+
+	/**
+	 * Stops the timer thread. Pending tasks are discarded.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * A scheduled task.
+	 */
+	public class Timeout {
+
+		private static final int PENDING = 0;
+		private static final int EXPIRED = 1;
+		private static final int CANCELLED = 2;
+
+		private final Runnable task;
+		private final long deadline;
+		private Timeout prev = this;
+		private Timeout next = this;
+		private int state = PENDING;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		private void linkBefore(Timeout sentinel) {
+			prev = sentinel.prev;
+			next = sentinel;
+			sentinel.prev.next = this;
+			sentinel.prev = this;
+		}
+
+		private void unlink() {
+			prev.next = next;
+			next.prev = prev;
+			prev = next = this;
+		}
+
+		/**
+		 * Prevents the task from running, if it hasn't run yet.
+		 * @return {@code true} if the task has been cancelled, {@code false} if it already ran or has been cancelled before
+		 */
+		public boolean cancel() {
+			lock.lock();
+			try {
+				if (state != PENDING) {
+					return false;
+				}
+				state = CANCELLED;
+				unlink();
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
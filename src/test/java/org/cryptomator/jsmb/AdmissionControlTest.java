@@ -0,0 +1,55 @@
+package org.cryptomator.jsmb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AdmissionControlTest {
+
+	@Test
+	@DisplayName("refuses connections beyond the unauthenticated limit")
+	public void testUnauthenticatedLimit() {
+		var admission = new AdmissionControl(10, 2);
+		var first = admission.tryAdmit();
+		var second = admission.tryAdmit();
+		Assertions.assertNotNull(first);
+		Assertions.assertNotNull(second);
+
+		Assertions.assertNull(admission.tryAdmit());
+		first.authenticated();
+		Assertions.assertNotNull(admission.tryAdmit());
+		Assertions.assertEquals(3, admission.connections());
+		Assertions.assertEquals(2, admission.unauthenticated());
+		Assertions.assertEquals(1, admission.refused());
+	}
+
+	@Test
+	@DisplayName("refuses connections beyond the total limit")
+	public void testConnectionLimit() {
+		var admission = new AdmissionControl(2, 2);
+		var first = admission.tryAdmit();
+		var second = admission.tryAdmit();
+		first.authenticated();
+		second.authenticated();
+
+		Assertions.assertNull(admission.tryAdmit());
+		second.close();
+		Assertions.assertNotNull(admission.tryAdmit());
+	}
+
+	@Test
+	@DisplayName("releases each slot exactly once")
+	public void testIdempotentRelease() {
+		var admission = new AdmissionControl(2, 2);
+		var permit = admission.tryAdmit();
+
+		permit.authenticated();
+		permit.authenticated();
+		permit.close();
+		permit.close();
+		permit.authenticated();
+
+		Assertions.assertEquals(0, admission.connections());
+		Assertions.assertEquals(0, admission.unauthenticated());
+	}
+}
@@ -0,0 +1,206 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.smb2.PacketHeader;
+import org.cryptomator.jsmb.util.BufferPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.ValueLayout;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+class FrameDecoderTest {
+
+	private BufferPool bufferPool;
+
+	@BeforeEach
+	public void setup() {
+		bufferPool = new BufferPool(1 << 20);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		bufferPool.close();
+	}
+
+	private static ByteBuffer frames(int... sizes) {
+		int total = 0;
+		for (int size : sizes) {
+			total += 4 + size;
+		}
+		var buffer = ByteBuffer.allocate(total);
+		for (int size : sizes) {
+			buffer.putInt(size);
+			for (int i = 0; i < size; i++) {
+				buffer.put((byte) size);
+			}
+		}
+		return buffer.flip();
+	}
+
+	/**
+	 * A channel delivering at most {@code maxRead} bytes per read and counting the reads.
+	 */
+	private static class ChunkedChannel implements ReadableByteChannel {
+
+		private final ByteBuffer data;
+		private final int maxRead;
+		int reads;
+
+		ChunkedChannel(ByteBuffer data, int maxRead) {
+			this.data = data;
+			this.maxRead = maxRead;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			reads++;
+			if (!data.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(Math.min(maxRead, dst.remaining()), data.remaining());
+			dst.put(data.slice(data.position(), n));
+			data.position(data.position() + n);
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@Test
+	@DisplayName("decodes multiple frames from a single read")
+	public void testMultipleFramesPerRead() throws IOException {
+		var channel = new ChunkedChannel(frames(10, 20, 30), Integer.MAX_VALUE);
+		try (var decoder = new FrameDecoder(bufferPool, 1024)) {
+			try (var f1 = decoder.next(channel); var f2 = decoder.next(channel); var f3 = decoder.next(channel)) {
+				Assertions.assertEquals(10, f1.segment().byteSize());
+				Assertions.assertEquals(20, f2.segment().byteSize());
+				Assertions.assertEquals(30, f3.segment().get(ValueLayout.JAVA_BYTE, 29));
+			}
+			Assertions.assertEquals(1, channel.reads);
+			Assertions.assertThrows(EOFException.class, () -> decoder.next(channel));
+		}
+	}
+
+	@Test
+	@DisplayName("reassembles frames split across reads and chunks")
+	public void testSplitFrames() throws IOException {
+		var channel = new ChunkedChannel(frames(100, 3, 200, 50, 150), 7);
+		try (var decoder = new FrameDecoder(bufferPool, 256)) {
+			for (int expected : new int[]{100, 3, 200, 50, 150}) {
+				try (var frame = decoder.next(channel)) {
+					Assertions.assertEquals(expected, frame.segment().byteSize());
+					Assertions.assertEquals((byte) expected, frame.segment().get(ValueLayout.JAVA_BYTE, 0));
+					Assertions.assertEquals((byte) expected, frame.segment().get(ValueLayout.JAVA_BYTE, expected - 1));
+				}
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("keeps frames valid while the decoder moves to the next chunk")
+	public void testFramesOutliveChunk() throws IOException {
+		var channel = new ChunkedChannel(frames(200, 200, 200), Integer.MAX_VALUE);
+		try (var decoder = new FrameDecoder(bufferPool, 256)) {
+			var f1 = decoder.next(channel);
+			var f2 = decoder.next(channel);
+			var f3 = decoder.next(channel);
+			Assertions.assertEquals((byte) 200, f1.segment().get(ValueLayout.JAVA_BYTE, 199));
+			Assertions.assertEquals((byte) 200, f2.segment().get(ValueLayout.JAVA_BYTE, 199));
+			Assertions.assertEquals((byte) 200, f3.segment().get(ValueLayout.JAVA_BYTE, 199));
+			f1.close();
+			f2.close();
+			f3.close();
+		}
+		Assertions.assertEquals(0, bufferPool.stats().leasedBytes());
+	}
+
+	@Test
+	@DisplayName("reads frames larger than a chunk into dedicated buffers")
+	public void testLargeFrame() throws IOException {
+		var channel = new ChunkedChannel(frames(5, 5000, 5), 1000);
+		try (var decoder = new FrameDecoder(bufferPool, 256)) {
+			decoder.next(channel).close();
+			try (var large = decoder.next(channel)) {
+				Assertions.assertEquals(5000, large.segment().byteSize());
+				Assertions.assertEquals((byte) 5000, large.segment().get(ValueLayout.JAVA_BYTE, 4999));
+			}
+			decoder.next(channel).close();
+		}
+		Assertions.assertEquals(0, bufferPool.stats().leasedBytes());
+	}
+
+	@Test
+	@DisplayName("truncates frames larger than a chunk if requested and skips their remainder")
+	public void testRejectLargeFrame() throws IOException {
+		var channel = new ChunkedChannel(frames(5, 5000, 7), 1000);
+		try (var decoder = new FrameDecoder(bufferPool, 256, 10_000, () -> false)) {
+			try (var small = decoder.next(channel)) {
+				Assertions.assertFalse(small.isTruncated());
+			}
+			try (var rejected = decoder.next(channel)) {
+				Assertions.assertTrue(rejected.isTruncated());
+				Assertions.assertEquals(PacketHeader.STRUCTURE_SIZE, rejected.segment().byteSize());
+				Assertions.assertEquals((byte) 5000, rejected.segment().get(ValueLayout.JAVA_BYTE, 63));
+			}
+			try (var next = decoder.next(channel)) {
+				Assertions.assertFalse(next.isTruncated());
+				Assertions.assertEquals(7, next.segment().byteSize());
+				Assertions.assertEquals((byte) 7, next.segment().get(ValueLayout.JAVA_BYTE, 0));
+			}
+			Assertions.assertThrows(EOFException.class, () -> decoder.next(channel));
+		}
+		Assertions.assertEquals(0, bufferPool.stats().leasedBytes());
+	}
+	@Test
+	@DisplayName("truncates rejected frames whose header is split across chunks")
+	public void testRejectSplitLargeFrame() throws IOException {
+		var channel = new ChunkedChannel(frames(200, 5000, 7), 7);
+		try (var decoder = new FrameDecoder(bufferPool, 256, 10_000, () -> false)) {
+			decoder.next(channel).close();
+			try (var rejected = decoder.next(channel)) {
+				Assertions.assertTrue(rejected.isTruncated());
+				Assertions.assertEquals(PacketHeader.STRUCTURE_SIZE, rejected.segment().byteSize());
+			}
+			try (var next = decoder.next(channel)) {
+				Assertions.assertEquals(7, next.segment().byteSize());
+			}
+		}
+		Assertions.assertEquals(0, bufferPool.stats().leasedBytes());
+	}
+
+	@Test
+	@DisplayName("refuses transport headers with a non-zero first byte")
+	public void testInvalidTransportHeader() {
+		var channel = new ChunkedChannel(ByteBuffer.wrap(new byte[]{0x01, 0x00, 0x00, 0x05, 1, 2, 3, 4, 5}), Integer.MAX_VALUE);
+		try (var decoder = new FrameDecoder(bufferPool, 256)) {
+			Assertions.assertThrows(ProtocolException.class, () -> decoder.next(channel));
+		}
+		Assertions.assertEquals(0, bufferPool.stats().leasedBytes());
+	}
+
+	@Test
+	@DisplayName("refuses frames exceeding the maximum frame size before allocating a buffer")
+	public void testFrameTooLarge() {
+		var channel = new ChunkedChannel(frames(5, 10_001), 1000);
+		try (var decoder = new FrameDecoder(bufferPool, 256, 10_000, () -> true)) {
+			Assertions.assertDoesNotThrow(() -> decoder.next(channel).close());
+			Assertions.assertThrows(ProtocolException.class, () -> decoder.next(channel));
+			Assertions.assertTrue(bufferPool.stats().leasedBytes() < 10_000); // only the chunk
+		}
+		Assertions.assertEquals(0, bufferPool.stats().leasedBytes());
+	}
+}
@@ -0,0 +1,49 @@
+package org.cryptomator.jsmb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+class LoopbackChannelTest {
+
+	@Test
+	@DisplayName("transfers more bytes than the buffer capacity")
+	public void testTransfer() throws IOException {
+		var channels = LoopbackChannel.pair(7);
+		var data = new byte[1000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+
+		var writer = CompletableFuture.runAsync(() -> {
+			try (var ch = channels[0]) {
+				ch.write(new ByteBuffer[]{ByteBuffer.wrap(data, 0, 500), ByteBuffer.wrap(data, 500, 500)});
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		var received = ByteBuffer.allocate(data.length + 1);
+		while (channels[1].read(received) != -1) {
+			// keep reading until EOF
+		}
+		writer.join();
+
+		Assertions.assertArrayEquals(data, Arrays.copyOf(received.array(), received.position()));
+	}
+
+	@Test
+	@DisplayName("fails to write after peer closed")
+	public void testWriteAfterPeerClosed() {
+		var channels = LoopbackChannel.pair(16);
+		channels[1].close();
+
+		Assertions.assertFalse(channels[1].isOpen());
+		Assertions.assertThrows(ClosedChannelException.class, () -> channels[0].write(ByteBuffer.allocate(1)));
+	}
+}
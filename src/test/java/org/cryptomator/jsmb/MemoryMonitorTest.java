@@ -0,0 +1,28 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.MemoryMonitor.Pressure;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class MemoryMonitorTest {
+
+	@ParameterizedTest(name = "{0} at {1} -> {2}")
+	@DisplayName("derives pressure from usage with hysteresis")
+	@CsvSource({
+			"NORMAL, 0.50, NORMAL",
+			"NORMAL, 0.70, ELEVATED",
+			"NORMAL, 0.90, HIGH",
+			"NORMAL, 0.99, CRITICAL",
+			"ELEVATED, 0.66, ELEVATED", // within hysteresis
+			"ELEVATED, 0.64, NORMAL",
+			"CRITICAL, 0.92, CRITICAL",
+			"CRITICAL, 0.89, HIGH",
+			"CRITICAL, 0.10, NORMAL",
+			"HIGH, 0.94, HIGH",
+	})
+	public void testPressure(Pressure current, double usage, Pressure expected) {
+		Assertions.assertEquals(expected, Pressure.of(usage, current));
+	}
+}
@@ -0,0 +1,130 @@
+package org.cryptomator.jsmb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+class OutboundQueueTest {
+
+	@Test
+	@DisplayName("writes all queued frames with a single gathering write")
+	public void testFlushCombinesFrames() throws Exception {
+		var queue = new OutboundQueue(1024);
+		var channel = new RecordingChannel(Integer.MAX_VALUE);
+		queue.add(frame("foo", "bar"));
+		queue.add(frame("baz"));
+
+		queue.flush(channel);
+
+		Assertions.assertTrue(queue.isEmpty());
+		Assertions.assertEquals(1, channel.writes);
+		Assertions.assertEquals("foobarbaz", channel.data.toString());
+	}
+
+	@Test
+	@DisplayName("resumes partially written frames")
+	public void testPartialWrite() throws Exception {
+		var queue = new OutboundQueue(1024);
+		var channel = new RecordingChannel(4);
+		queue.add(frame("foo", "bar"));
+		queue.add(frame("baz"));
+
+		queue.flush(channel);
+		Assertions.assertFalse(queue.isEmpty());
+		Assertions.assertEquals("foob", channel.data.toString());
+
+		channel.capacity = Integer.MAX_VALUE;
+		queue.flush(channel);
+		Assertions.assertTrue(queue.isEmpty());
+		Assertions.assertEquals("foobarbaz", channel.data.toString());
+	}
+
+	@Test
+	@DisplayName("blocks while congested until drained to low watermark")
+	public void testBackpressure() throws Exception {
+		var queue = new OutboundQueue(4);
+		var channel = new RecordingChannel(3);
+		queue.add(frame("foobar"));
+		Assertions.assertTrue(queue.isCongested());
+
+		var waiting = CompletableFuture.runAsync(() -> {
+			try {
+				queue.awaitUncongested();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Assertions.assertThrows(TimeoutException.class, () -> waiting.get(50, TimeUnit.MILLISECONDS));
+
+		queue.flush(channel); // 3 bytes remaining, above low watermark
+		Assertions.assertFalse(queue.isCongested());
+		Assertions.assertFalse(queue.isDrained());
+		Assertions.assertThrows(TimeoutException.class, () -> waiting.get(50, TimeUnit.MILLISECONDS));
+
+		channel.capacity = Integer.MAX_VALUE;
+		queue.flush(channel);
+		Assertions.assertTimeoutPreemptively(Duration.ofSeconds(1), () -> waiting.join());
+	}
+
+	private static ByteBuffer[] frame(String... parts) {
+		var buffers = new ByteBuffer[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			buffers[i] = ByteBuffer.wrap(parts[i].getBytes());
+		}
+		return buffers;
+	}
+
+	/**
+	 * Behaves like a non-blocking channel, accepting at most {@code capacity} bytes per write.
+	 */
+	private static class RecordingChannel implements GatheringByteChannel {
+
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		private int capacity;
+		private int writes;
+
+		RecordingChannel(int capacity) {
+			this.capacity = capacity;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			writes++;
+			long written = 0;
+			for (int i = offset; i < offset + length && written < capacity; i++) {
+				while (srcs[i].hasRemaining() && written < capacity) {
+					data.write(srcs[i].get());
+					written++;
+				}
+			}
+			return written;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			return (int) write(new ByteBuffer[]{src});
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package org.cryptomator.jsmb;
+
+import org.cryptomator.jsmb.smb2.Command;
+import org.cryptomator.jsmb.smb2.SMB2Message;
+import org.cryptomator.jsmb.util.Layouts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class RequestSchedulerTest {
+
+	private ExecutorService executor;
+
+	@BeforeEach
+	public void setup() {
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		executor.close();
+	}
+
+	private static MemorySegment smb2Message(Command command) {
+		var segment = MemorySegment.ofArray(new byte[66]);
+		segment.set(Layouts.LE_INT32, 0, SMB2Message.PROTOCOL_ID);
+		segment.set(Layouts.LE_UINT16, 12, command.value());
+		return segment;
+	}
+
+	@Test
+	public void testIndependentRequestsRunConcurrently() throws InterruptedException {
+		var scheduler = new RequestScheduler(executor, true, 8);
+		var firstStarted = new CountDownLatch(1);
+		var secondFinished = new CountDownLatch(1);
+		var completed = new AtomicInteger();
+
+		scheduler.dispatch(smb2Message(Command.READ), () -> {
+			firstStarted.countDown();
+			try {
+				// would dead lock, if the second request wasn't processed concurrently:
+				Assertions.assertTrue(secondFinished.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			completed.incrementAndGet();
+		});
+		Assertions.assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+		scheduler.dispatch(smb2Message(Command.ECHO), () -> {
+			completed.incrementAndGet();
+			secondFinished.countDown();
+		});
+
+		// exclusive request waits for previous requests and runs on the calling thread:
+		var caller = Thread.currentThread();
+		scheduler.dispatch(smb2Message(Command.SESSION_SETUP), () -> {
+			Assertions.assertSame(caller, Thread.currentThread());
+			Assertions.assertEquals(2, completed.get());
+		});
+	}
+
+	@Test
+	public void testWithoutPipeliningAllRequestsAreExclusive() throws InterruptedException {
+		var scheduler = new RequestScheduler(executor, false, 8);
+		var caller = Thread.currentThread();
+
+		scheduler.dispatch(smb2Message(Command.READ), () -> Assertions.assertSame(caller, Thread.currentThread()));
+	}
+
+	@Test
+	public void testNonBlockingDispatchSuspendsReadingForExclusiveRequest() throws InterruptedException {
+		var scheduler = new RequestScheduler(executor, true, 8);
+		var resumed = new CountDownLatch(1);
+
+		Assertions.assertTrue(scheduler.dispatchNonBlocking(smb2Message(Command.ECHO), () -> {}, Assertions::fail));
+		Assertions.assertFalse(scheduler.dispatchNonBlocking(smb2Message(Command.NEGOATIATE), () -> {}, resumed::countDown));
+		Assertions.assertTrue(resumed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testRejectedTaskReleasesPermit() throws InterruptedException {
+		var scheduler = new RequestScheduler(executor, true, 1);
+		executor.close();
+
+		Assertions.assertThrows(RejectedExecutionException.class, () -> scheduler.dispatch(smb2Message(Command.ECHO), Assertions::fail));
+		Assertions.assertThrows(RejectedExecutionException.class, () -> scheduler.dispatchNonBlocking(smb2Message(Command.ECHO), Assertions::fail, Assertions::fail));
+		// would block forever, if a permit leaked:
+		scheduler.dispatch(smb2Message(Command.NEGOATIATE), () -> {});
+	}
+
+}
@@ -0,0 +1,122 @@
+package org.cryptomator.jsmb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+class TcpServerTest {
+
+	private static void sendSmb1Negotiate(ByteChannel client) throws IOException {
+		var dialect = "SMB 2.???".getBytes(StandardCharsets.US_ASCII);
+		var request = ByteBuffer.allocate(4 + 32 + 1 + 2 + 1 + dialect.length + 1).order(ByteOrder.LITTLE_ENDIAN);
+		request.order(ByteOrder.BIG_ENDIAN).putInt(request.capacity() - 4).order(ByteOrder.LITTLE_ENDIAN);
+		request.putInt(0x424D53FF).put((byte) 0x72); // SMB_COM_NEGOTIATE
+		request.position(4 + 32).put((byte) 0).putShort((short) (dialect.length + 2)).put((byte) 0x02).put(dialect).put((byte) 0);
+		client.write(request.flip());
+	}
+
+	private static ByteBuffer receive(ByteChannel client) throws IOException {
+		var transportHeader = ByteBuffer.allocate(4);
+		readFully(client, transportHeader);
+		var response = ByteBuffer.allocate(transportHeader.getInt(0)).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(client, response);
+		return response;
+	}
+
+	private static void readFully(ByteChannel client, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (client.read(buffer) == -1) {
+				throw new IOException("Unexpected EOF");
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("negotiates with an in-memory server")
+	public void testInMemoryServer() throws IOException {
+		try (var server = TcpServer.startInMemory(ServerConfig.defaults()); var client = server.connect()) {
+			sendSmb1Negotiate(client);
+			var response = receive(client);
+
+			Assertions.assertEquals(0x424D53FE, response.getInt(0)); // SMB2 header
+			Assertions.assertEquals(-1, server.getLocalPort());
+		}
+	}
+
+	@Test
+	@DisplayName("shutdown closes idle connections without waiting for the timeout")
+	public void testGracefulShutdown() throws IOException {
+		var server = TcpServer.startInMemory(ServerConfig.defaults());
+		try (var client = server.connect()) {
+			sendSmb1Negotiate(client);
+			receive(client);
+
+			Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> server.shutdown(Duration.ofMinutes(1)));
+			Assertions.assertEquals(-1, client.read(ByteBuffer.allocate(1)));
+			Assertions.assertThrows(IOException.class, server::connect);
+		}
+	}
+
+	@Test
+	@DisplayName("shutdown closes connections of clients that don't read their responses once the timeout elapsed")
+	public void testForcedShutdown() throws IOException {
+		var server = TcpServer.startInMemory(ServerConfig.defaults());
+		var channels = LoopbackChannel.pair(16); // too small for the response, so writing it blocks
+		server.adopt(channels[1], false);
+		try (var client = channels[0]) {
+			sendSmb1Negotiate(client);
+
+			Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> server.shutdown(Duration.ofMillis(100)));
+			Assertions.assertThrows(IOException.class, () -> receive(client));
+		}
+	}
+
+	@Test
+	@DisplayName("accepts connections on multiple sockets bound to the same port")
+	public void testMultipleAcceptors() throws IOException {
+		try (var server = TcpServer.start(0, ServerConfig.builder().acceptors(4).build())) {
+			for (int i = 0; i < 8; i++) {
+				try (var client = SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()))) {
+					sendSmb1Negotiate(client);
+					Assertions.assertEquals(0x424D53FE, receive(client).getInt(0));
+				}
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("serves adopted streams of other transports")
+	public void testAdoptStream() throws IOException {
+		try (var server = TcpServer.startInMemory(ServerConfig.defaults())) {
+			var channels = LoopbackChannel.pair(1024);
+			server.adopt(channels[1], true);
+			try (var client = channels[0]) {
+				sendSmb1Negotiate(client);
+				Assertions.assertEquals(0x424D53FE, receive(client).getInt(0));
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("counts connections refused due to maxConnections")
+	public void testRefusedConnections() throws IOException {
+		try (var server = TcpServer.startInMemory(ServerConfig.builder().maxConnections(1).build())) {
+			var first = LoopbackChannel.pair(1024);
+			var second = LoopbackChannel.pair(1024);
+			server.adopt(first[1], true);
+
+			Assertions.assertThrows(IOException.class, () -> server.adopt(second[1], true));
+			Assertions.assertEquals(1, server.refusedConnections());
+			first[0].close();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package org.cryptomator.jsmb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+class TransportTest {
+
+	@Test
+	@DisplayName("in-memory and loopback peers are local")
+	public void testLocalPeer() throws IOException {
+		var loopback = LoopbackChannel.pair(16);
+		Assertions.assertTrue(Transport.isLocalPeer(loopback[1]));
+
+		try (var server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			 var client = SocketChannel.open(server.getLocalAddress());
+			 var accepted = server.accept()) {
+			Assertions.assertTrue(Transport.isLocalPeer(accepted));
+			Assertions.assertTrue(Transport.isLocalPeer(client));
+		}
+	}
+
+	@Test
+	@DisplayName("unconnected sockets are not local")
+	public void testUnconnected() throws IOException {
+		try (var socket = SocketChannel.open()) {
+			Assertions.assertFalse(Transport.isLocalPeer(socket));
+		}
+	}
+}
@@ -1,9 +1,11 @@
 package org.cryptomator.jsmb.asn1;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
-import java.nio.ByteBuffer;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
 import java.util.Base64;
 
 class ASN1NodeTest {
@@ -12,9 +14,38 @@ class ASN1NodeTest {
 	public void parseAndSerialize() {
 		// see also https://lapo.it/asn1js/#YH4GBisGAQUFAqB0MHKgRDBCBgkqhkiC9xIBAgIGCSqGSIb3EgECAgYGKoVwKw4DBgYrBgEFBQ4GCisGAQQBgjcCAgoGBisFAQUCBwYGKwYBBQIFoyowKKAmGyRub3RfZGVmaW5lZF9pbl9SRkM0MTc4QHBsZWFzZV9pZ25vcmU
 		byte[] original = Base64.getDecoder().decode("YH4GBisGAQUFAqB0MHKgRDBCBgkqhkiC9xIBAgIGCSqGSIb3EgECAgYGKoVwKw4DBgYrBgEFBQ4GCisGAQQBgjcCAgoGBisFAQUCBwYGKwYBBQIFoyowKKAmGyRub3RfZGVmaW5lZF9pbl9SRkM0MTc4QHBsZWFzZV9pZ25vcmU=");
-		var parsed = ASN1Node.parse(ByteBuffer.wrap(original));
+		var parsed = toNode(ASN1View.read(MemorySegment.ofArray(original)));
 		var serialized = parsed.serialize();
 		Assertions.assertArrayEquals(original, serialized);
 	}
 
-}
\ No newline at end of file
+	@Test
+	@DisplayName("serializes nested nodes with multi-byte lengths into a single array")
+	public void serializeNested() {
+		var data = new byte[300];
+		Arrays.fill(data, (byte) 0x42);
+		var node = ASN1Node.constructed(ASN1Id.SEQUENCE,
+				ASN1Node.constructed(ASN1Id.of(0xA0),
+						ASN1Node.primitive(ASN1Id.OCTET_STRING, data)
+				),
+				ASN1Node.primitive(ASN1Id.ENUMERATED, new byte[]{0x01})
+		);
+
+		var serialized = node.serialize();
+
+		Assertions.assertEquals(node.size(), serialized.length);
+		Assertions.assertEquals(4 + 4 + 4 + 300 + 3, serialized.length);
+		Assertions.assertArrayEquals(new byte[]{0x30, (byte) 0x82, 0x01, 0x37, (byte) 0xA0, (byte) 0x82, 0x01, 0x30, 0x04, (byte) 0x82, 0x01, 0x2C}, Arrays.copyOf(serialized, 12));
+		Assertions.assertArrayEquals(new byte[]{0x0A, 0x01, 0x01}, Arrays.copyOfRange(serialized, serialized.length - 3, serialized.length));
+		Assertions.assertArrayEquals(serialized, toNode(ASN1View.read(MemorySegment.ofArray(serialized))).serialize());
+	}
+
+	private static ASN1Node toNode(ASN1View view) {
+		if (view.isConstructed()) {
+			return ASN1Node.constructed(view.identifier(), view.children().stream().map(ASN1NodeTest::toNode).toArray(ASN1Node[]::new));
+		} else {
+			return ASN1Node.primitive(view.identifier(), view.contentBytes());
+		}
+	}
+
+}
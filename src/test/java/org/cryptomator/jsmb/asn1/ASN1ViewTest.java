@@ -0,0 +1,76 @@
+package org.cryptomator.jsmb.asn1;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Base64;
+import java.util.HexFormat;
+
+class ASN1ViewTest {
+
+	@Test
+	@DisplayName("reads nodes in place")
+	public void testRead() {
+		var bytes = Base64.getDecoder().decode("YH4GBisGAQUFAqB0MHKgRDBCBgkqhkiC9xIBAgIGCSqGSIb3EgECAgYGKoVwKw4DBgYrBgEFBQ4GCisGAQQBgjcCAgoGBisFAQUCBwYGKwYBBQIFoyowKKAmGyRub3RfZGVmaW5lZF9pbl9SRkM0MTc4QHBsZWFzZV9pZ25vcmU=");
+		var segment = MemorySegment.ofArray(bytes);
+
+		var node = ASN1View.read(segment);
+
+		Assertions.assertTrue(node.hasIdentifier(ASN1Id.APPLICATION));
+		Assertions.assertEquals(bytes.length, node.size());
+		var oid = node.child(0);
+		Assertions.assertTrue(oid.hasIdentifier(ASN1Id.OBJECT_IDENTIFIER));
+		Assertions.assertTrue(oid.contentEquals(OID.SPNEGO));
+		Assertions.assertArrayEquals(OID.SPNEGO, oid.contentBytes());
+		Assertions.assertEquals(segment.address() + 4, oid.content().address()); // not copied
+		Assertions.assertNotNull(node.child(1).findChild(ASN1Id.SEQUENCE));
+		Assertions.assertNull(node.findChild(ASN1Id.OCTET_STRING));
+		Assertions.assertEquals(2, node.children().size());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> node.child(2));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> oid.child(0));
+	}
+
+	@ParameterizedTest
+	@DisplayName("rejects malformed nodes")
+	@ValueSource(strings = {
+			"30", // truncated
+			"3004020101", // exceeds available bytes
+			"3080020101", // indefinite length
+			"3085000000000100", // too many length octets
+			"1f818181810100", // identifier too long
+	})
+	public void testMalformed(String hex) {
+		var segment = MemorySegment.ofArray(HexFormat.of().parseHex(hex));
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ASN1View.read(segment));
+	}
+
+	@Test
+	@DisplayName("rejects child exceeding its parent")
+	public void testChildExceedsParent() {
+		var node = ASN1View.read(MemorySegment.ofArray(HexFormat.of().parseHex("300302020101")));
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> node.child(0));
+	}
+
+	@Test
+	@DisplayName("rejects nodes nested too deeply")
+	public void testMaxDepth() {
+		var bytes = new byte[2 * (ASN1View.MAX_DEPTH + 1)];
+		for (int i = 0; i < ASN1View.MAX_DEPTH + 1; i++) {
+			bytes[2 * i] = 0x30;
+			bytes[2 * i + 1] = (byte) (bytes.length - 2 * i - 2);
+		}
+		var node = ASN1View.read(MemorySegment.ofArray(bytes));
+		for (int i = 0; i < ASN1View.MAX_DEPTH - 1; i++) {
+			node = node.child(0);
+		}
+
+		var deepest = node;
+		Assertions.assertThrows(IllegalArgumentException.class, () -> deepest.child(0));
+	}
+}
@@ -0,0 +1,61 @@
+package org.cryptomator.jsmb.asn1;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time and, via the GC profiler's {@code gc.alloc.rate.norm}, the bytes allocated to create a SPNEGO token.
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpnegoTokenBenchmark {
+
+	private byte[] challenge;
+
+	@Setup
+	public void setup() {
+		challenge = new byte[256]; // roughly the size of an NTLM CHALLENGE_MESSAGE
+		new Random(42).nextBytes(challenge);
+	}
+
+	@Benchmark
+	public byte[] negTokenInit2() {
+		return NegTokenInit2.createNtlmOnly();
+	}
+
+	@Benchmark
+	public byte[] negTokenResp() {
+		return NegTokenResp.acceptIncomplete(challenge);
+	}
+
+	@Test
+	@Disabled("only on demand")
+	public void runBenchmarks() throws RunnerException {
+		var opts = new OptionsBuilder() //
+				.include(SpnegoTokenBenchmark.class.getSimpleName()) //
+				.addProfiler(GCProfiler.class) //
+				.build();
+		new Runner(opts).run();
+	}
+}
@@ -0,0 +1,78 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CommandSequenceWindowTest {
+
+	@Test
+	@DisplayName("initially contains only MessageId 0")
+	public void testInitialWindow() {
+		var window = new CommandSequenceWindow(64);
+
+		Assertions.assertFalse(window.consume(1, 1));
+		Assertions.assertTrue(window.consume(0, 1));
+		Assertions.assertFalse(window.consume(0, 1)); // must not be reused
+		Assertions.assertEquals(1, window.lowestAvailable());
+	}
+
+	@Test
+	@DisplayName("accepts IDs out of order and advances once the gap is closed")
+	public void testOutOfOrder() {
+		var window = new CommandSequenceWindow(64);
+		window.extend(9);
+
+		Assertions.assertTrue(window.consume(3, 2));
+		Assertions.assertTrue(window.consume(1, 1));
+		Assertions.assertEquals(0, window.lowestAvailable());
+		Assertions.assertTrue(window.consume(0, 1));
+		Assertions.assertEquals(2, window.lowestAvailable());
+		Assertions.assertTrue(window.consume(2, 1));
+		Assertions.assertEquals(5, window.lowestAvailable());
+		Assertions.assertEquals(10, window.nextUngranted());
+	}
+
+	@Test
+	@DisplayName("rejects multi-credit requests exceeding the granted range")
+	public void testCreditChargeOutOfRange() {
+		var window = new CommandSequenceWindow(64);
+		window.extend(3);
+
+		Assertions.assertFalse(window.consume(2, 3));
+		Assertions.assertFalse(window.consume(Long.MAX_VALUE, 2));
+		Assertions.assertTrue(window.consume(0, 4));
+		Assertions.assertEquals(4, window.lowestAvailable());
+	}
+
+	@Test
+	@DisplayName("rejects partially used ranges without consuming anything")
+	public void testPartiallyUsed() {
+		var window = new CommandSequenceWindow(64);
+		window.extend(3);
+		Assertions.assertTrue(window.consume(2, 1));
+
+		Assertions.assertFalse(window.consume(1, 2));
+		Assertions.assertTrue(window.consume(1, 1));
+	}
+
+	@Test
+	@DisplayName("wraps around the ring while limiting the span to its capacity")
+	public void testWrapAround() {
+		var window = new CommandSequenceWindow(64);
+		Assertions.assertEquals(63, window.available());
+		window.extend(63);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> window.extend(1));
+
+		Assertions.assertTrue(window.consume(1, 63));
+		Assertions.assertEquals(0, window.lowestAvailable()); // ID 0 is still pending
+		Assertions.assertEquals(0, window.available());
+		Assertions.assertTrue(window.consume(0, 1));
+		Assertions.assertEquals(64, window.available());
+
+		window.extend(64);
+		Assertions.assertTrue(window.consume(127, 1));
+		Assertions.assertTrue(window.consume(64, 63));
+		Assertions.assertEquals(128, window.lowestAvailable());
+	}
+}
@@ -0,0 +1,46 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.util.Layouts;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.List;
+
+class CompoundResponseTest {
+
+	private static SessionSetupResponse response(long messageId) {
+		var header = PacketHeader.builder();
+		header.command(Command.SESSION_SETUP.value());
+		header.flags(SMB2Message.Flags.SERVER_TO_REDIR);
+		header.messageId(messageId);
+		return new SessionSetupResponse(header.build());
+	}
+
+	@Test
+	public void testSerialize() {
+		var compound = new CompoundResponse(CompoundResponse.chain(List.of(
+				new CompoundResponse.Part(response(1), false),
+				new CompoundResponse.Part(response(2), true),
+				new CompoundResponse.Part(response(3), true)
+		)));
+
+		var serialized = MemorySegment.ofArray(compound.serialize());
+
+		Assertions.assertEquals(80 + 80 + 73, serialized.byteSize()); // 64 byte header + 9 byte body, padded to 8 bytes except for last response
+		var first = new PacketHeader(serialized.asSlice(0, 64));
+		var second = new PacketHeader(serialized.asSlice(80, 64));
+		var third = new PacketHeader(serialized.asSlice(160, 64));
+		Assertions.assertEquals(80, first.nextCommand());
+		Assertions.assertEquals(80, second.nextCommand());
+		Assertions.assertEquals(0, third.nextCommand());
+		Assertions.assertEquals(1L, first.messageId());
+		Assertions.assertEquals(2L, second.messageId());
+		Assertions.assertEquals(3L, third.messageId());
+		Assertions.assertFalse(first.hasFlag(SMB2Message.Flags.RELATED_OPERATIONS));
+		Assertions.assertTrue(second.hasFlag(SMB2Message.Flags.RELATED_OPERATIONS | SMB2Message.Flags.SERVER_TO_REDIR));
+		Assertions.assertTrue(third.hasFlag(SMB2Message.Flags.RELATED_OPERATIONS));
+		Assertions.assertEquals(0, serialized.get(Layouts.BYTE, 79)); // padding
+	}
+
+}
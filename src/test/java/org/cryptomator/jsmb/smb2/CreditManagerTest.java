@@ -0,0 +1,77 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CreditManagerTest {
+
+	@Test
+	@DisplayName("grants requested credits within connection limit")
+	public void testGrantRequestedCredits() {
+		var budget = new CreditBudget(1000);
+		var credits = new CreditManager(budget, new CommandSequenceWindow(100), 100);
+		Assertions.assertEquals(1, credits.outstanding());
+
+		Assertions.assertEquals(10, credits.grant((char) 1, (char) 10));
+		Assertions.assertEquals(10, credits.outstanding());
+		Assertions.assertEquals(91, credits.grant((char) 1, (char) 500)); // capped by connection limit
+		Assertions.assertEquals(100, credits.outstanding());
+		Assertions.assertEquals(100, budget.outstanding());
+	}
+
+	@Test
+	@DisplayName("only replenishes consumed credits under high load")
+	public void testReplenishUnderLoad() {
+		var budget = new CreditBudget(100);
+		var credits = new CreditManager(budget, new CommandSequenceWindow(1000), 1000);
+		Assertions.assertEquals(20, credits.grant((char) 1, (char) 20));
+		var other = new CreditManager(budget, new CommandSequenceWindow(1000), 1000);
+		Assertions.assertEquals(60, other.grant((char) 1, (char) 60)); // 80% load
+
+		Assertions.assertEquals(4, credits.grant((char) 4, (char) 50));
+		Assertions.assertEquals(20, credits.outstanding());
+	}
+
+	@Test
+	@DisplayName("grants fewer credits than consumed while throttled")
+	public void testThrottle() {
+		var budget = new CreditBudget(1000);
+		var credits = new CreditManager(budget, new CommandSequenceWindow(1000), 1000);
+		Assertions.assertEquals(100, credits.grant((char) 1, (char) 100));
+		budget.throttle(true);
+
+		Assertions.assertEquals(4, credits.grant((char) 8, (char) 50));
+		Assertions.assertEquals(96, credits.outstanding());
+		Assertions.assertEquals(0, credits.grant((char) 1, (char) 50));
+		Assertions.assertEquals(95, credits.outstanding());
+	}
+
+	@Test
+	@DisplayName("takes back credits when budget is exhausted, but never below one")
+	public void testTakeBackCredits() {
+		var budget = new CreditBudget(10);
+		var credits = new CreditManager(budget, new CommandSequenceWindow(100), 100);
+		Assertions.assertEquals(10, credits.grant((char) 1, (char) 10));
+		var other = new CreditManager(budget, new CommandSequenceWindow(100), 100); // exceeds budget by one for its initial credit
+		Assertions.assertEquals(11, budget.outstanding());
+
+		Assertions.assertEquals(0, credits.grant((char) 1, (char) 10));
+		Assertions.assertEquals(9, credits.outstanding());
+		Assertions.assertEquals(1, other.grant((char) 1, (char) 10)); // minimum grant
+	}
+
+	@Test
+	@DisplayName("returns outstanding credits on release")
+	public void testRelease() {
+		var budget = new CreditBudget(1000);
+		var credits = new CreditManager(budget, new CommandSequenceWindow(100), 100);
+		credits.grant((char) 1, (char) 42);
+
+		credits.release();
+
+		Assertions.assertEquals(0, budget.outstanding());
+		Assertions.assertEquals(0, credits.grant((char) 1, (char) 1));
+	}
+
+}
@@ -0,0 +1,108 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.common.MalformedMessageException;
+import org.cryptomator.jsmb.common.NTStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+
+class DispatcherTest {
+
+	@Test
+	@DisplayName("runs stages in phase order around the handler")
+	public void testStageOrder() {
+		var dispatcher = Dispatcher.<List<String>>builder() //
+				.stage(Dispatcher.Phase.SIGN, (log, msg) -> log(log, "sign", msg)) //
+				.stage(Dispatcher.Phase.VERIFY_SIGNATURE, (log, msg) -> log(log, "verify", msg)) //
+				.stage(Dispatcher.Phase.SIGN, (log, msg) -> log(log, "sign2", msg)) //
+				.handler(Command.NEGOATIATE, NegotiateRequest.class, (log, request) -> {
+					log.add("negotiate");
+					return ErrorResponse.create(request.header(), NTStatus.STATUS_SUCCESS, (char) 1);
+				}) //
+				.build();
+		var log = new ArrayList<String>();
+
+		var response = dispatcher.dispatch(log, request(Command.NEGOATIATE));
+		var completed = dispatcher.complete(log, List.of(new CompoundResponse.Part(response, false)));
+
+		Assertions.assertEquals(List.of("verify", "negotiate", "sign", "sign2"), log);
+		Assertions.assertSame(response, completed);
+	}
+
+	@Test
+	@DisplayName("runs outbound stages on compounded responses after chaining them")
+	public void testCompleteCompound() {
+		var nextCommands = new ArrayList<Integer>();
+		var dispatcher = Dispatcher.<Void>builder() //
+				.stage(Dispatcher.Phase.SIGN, (ctx, msg) -> {
+					nextCommands.add(msg.header().nextCommand());
+					return msg;
+				}) //
+				.build();
+		var first = ErrorResponse.create(request(Command.CREATE).header(), NTStatus.STATUS_SUCCESS, (char) 1);
+		var second = ErrorResponse.create(request(Command.CLOSE).header(), NTStatus.STATUS_SUCCESS, (char) 1);
+
+		var completed = dispatcher.complete(null, List.of(new CompoundResponse.Part(first, false), new CompoundResponse.Part(second, true)));
+
+		Assertions.assertInstanceOf(CompoundResponse.class, completed);
+		Assertions.assertEquals(List.of(80, 0), nextCommands); // 64 byte header + 9 byte body, padded to 8 bytes
+	}
+
+	@Test
+	@DisplayName("rejects commands without handler")
+	public void testUnknownCommand() {
+		var dispatcher = Dispatcher.<Void>builder().build();
+
+		Assertions.assertThrows(MalformedMessageException.class, () -> dispatcher.dispatch(null, request(Command.ECHO)));
+		Assertions.assertThrows(MalformedMessageException.class, () -> dispatcher.dispatch(null, request((char) 0xFFFF)));
+	}
+
+	@Test
+	@DisplayName("rejects duplicate handlers")
+	public void testDuplicateHandler() {
+		var builder = Dispatcher.<Void>builder().handler(Command.NEGOATIATE, NegotiateRequest.class, (ctx, request) -> request);
+
+		Assertions.assertThrows(IllegalStateException.class, () -> builder.handler(Command.NEGOATIATE, NegotiateRequest.class, (ctx, request) -> request));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> builder.stage(Dispatcher.Phase.HANDLE, (ctx, msg) -> msg));
+	}
+
+	@Test
+	@DisplayName("counts invocations per phase if timed")
+	public void testTimed() {
+		var builder = Dispatcher.<Void>builder() //
+				.stage(Dispatcher.Phase.SIGN, (ctx, msg) -> msg) //
+				.handler(Command.NEGOATIATE, NegotiateRequest.class, (ctx, request) -> request);
+		var untimed = builder.build();
+		var timed = builder.timed(true).build();
+
+		untimed.dispatch(null, request(Command.NEGOATIATE));
+		var response = timed.dispatch(null, request(Command.NEGOATIATE));
+		timed.dispatch(null, request(Command.NEGOATIATE));
+		timed.complete(null, List.of(new CompoundResponse.Part(response, false)));
+
+		Assertions.assertEquals(-1, untimed.invocations(Dispatcher.Phase.HANDLE));
+		Assertions.assertEquals(2, timed.invocations(Dispatcher.Phase.HANDLE));
+		Assertions.assertEquals(1, timed.invocations(Dispatcher.Phase.SIGN));
+		Assertions.assertEquals(0, timed.invocations(Dispatcher.Phase.VERIFY_SIGNATURE));
+		Assertions.assertTrue(timed.nanos(Dispatcher.Phase.HANDLE) >= 0);
+	}
+
+	private static SMB2Message log(List<String> log, String entry, SMB2Message msg) {
+		log.add(entry);
+		return msg;
+	}
+
+	private static SMB2Message request(Command command) {
+		return request(command.value());
+	}
+
+	private static SMB2Message request(char command) {
+		var header = PacketHeader.builder();
+		header.command(command);
+		return NegotiateRequest.parse(header.build(), MemorySegment.ofArray(new byte[36]));
+	}
+}
@@ -0,0 +1,31 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.common.NTStatus;
+import org.cryptomator.jsmb.util.Layouts;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ErrorResponseTest {
+
+	@Test
+	@DisplayName("answers request with status and without error data")
+	public void testCreate() {
+		var request = PacketHeader.builder();
+		request.command(Command.SESSION_SETUP.value());
+		request.messageId(42L);
+		request.sessionId(0x1234L);
+
+		var response = ErrorResponse.create(request.build(), NTStatus.STATUS_IO_TIMEOUT, (char) 3);
+
+		Assertions.assertEquals(Command.SESSION_SETUP.value(), response.header().command());
+		Assertions.assertEquals(NTStatus.STATUS_IO_TIMEOUT, response.header().status());
+		Assertions.assertEquals(42L, response.header().messageId());
+		Assertions.assertEquals(0x1234L, response.header().sessionId());
+		Assertions.assertEquals(3, response.header().creditResponse());
+		Assertions.assertTrue(response.header().hasFlag(SMB2Message.Flags.SERVER_TO_REDIR));
+		Assertions.assertEquals(ErrorResponse.STRUCTURE_SIZE, response.segment().byteSize());
+		Assertions.assertEquals(ErrorResponse.STRUCTURE_SIZE, response.segment().get(Layouts.LE_UINT16, 0));
+		Assertions.assertEquals(0, response.segment().get(Layouts.LE_INT32, 4)); // ByteCount
+	}
+}
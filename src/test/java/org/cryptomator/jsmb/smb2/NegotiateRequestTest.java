@@ -0,0 +1,44 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.smb2.negotiate.PreauthIntegrityCapabilities;
+import org.cryptomator.jsmb.util.Layouts;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+
+class NegotiateRequestTest {
+
+	@Test
+	@DisplayName("parses negotiate contexts starting at NegotiateContextOffset")
+	public void testNegotiateContexts() {
+		var request = request(PacketHeader.STRUCTURE_SIZE + 48); // skipping 8 bytes of padding after the dialects
+
+		var contexts = request.negotiateContexts();
+
+		Assertions.assertNotNull(contexts.preauthIntegrityCapabilities());
+		Assertions.assertArrayEquals(new char[]{PreauthIntegrityCapabilities.HASH_ALGORITHM_SHA512}, contexts.preauthIntegrityCapabilities().hashAlgorithms());
+	}
+
+	@Test
+	@DisplayName("rejects a NegotiateContextOffset overlapping the dialects or not aligned")
+	public void testInvalidNegotiateContextOffset() {
+		for (int offset : new int[]{PacketHeader.STRUCTURE_SIZE + 32, PacketHeader.STRUCTURE_SIZE + 44, 0}) {
+			var request = request(offset);
+
+			Assertions.assertNull(request.negotiateContexts());
+		}
+	}
+
+	private static NegotiateRequest request(int negotiateContextOffset) {
+		var body = MemorySegment.ofArray(new byte[128]);
+		body.set(Layouts.LE_UINT16, 0, (char) 36); // StructureSize
+		body.set(Layouts.LE_UINT16, 2, (char) 1); // DialectCount
+		body.set(Layouts.LE_INT32, 28, negotiateContextOffset);
+		body.set(Layouts.LE_UINT16, 32, (char) 1); // NegotiateContextCount
+		body.set(Layouts.LE_UINT16, 36, Dialects.SMB3_1_1);
+		PreauthIntegrityCapabilities.build(PreauthIntegrityCapabilities.HASH_ALGORITHM_SHA512, new byte[32]).writeTo(body, 48);
+		return NegotiateRequest.parse(PacketHeader.builder().build(), body);
+	}
+}
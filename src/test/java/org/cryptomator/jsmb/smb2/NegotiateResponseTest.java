@@ -0,0 +1,58 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.smb2.negotiate.EncryptionCapabilities;
+import org.cryptomator.jsmb.smb2.negotiate.NegotiateContext;
+import org.cryptomator.jsmb.smb2.negotiate.PreauthIntegrityCapabilities;
+import org.cryptomator.jsmb.smb2.negotiate.TransportCapabilities;
+import org.cryptomator.jsmb.util.Layouts;
+import org.cryptomator.jsmb.util.MemorySegments;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class NegotiateResponseTest {
+
+	@Test
+	@DisplayName("writes security buffer and 8-byte aligned negotiate contexts")
+	public void testCreate() {
+		var securityBuffer = new byte[]{1, 2, 3, 4, 5};
+		var contexts = List.<NegotiateContext>of(
+				PreauthIntegrityCapabilities.build(PreauthIntegrityCapabilities.HASH_ALGORITHM_SHA512, new byte[3]), // 17 bytes, padded to 24
+				EncryptionCapabilities.build(EncryptionCapabilities.AES_256_GCM),
+				TransportCapabilities.build(TransportCapabilities.ACCEPT_TRANSPORT_LEVEL_SECURITY)
+		);
+
+		var response = NegotiateResponse.create(PacketHeader.builder().build(), securityBuffer, contexts);
+
+		var body = response.segment();
+		Assertions.assertEquals(NegotiateResponse.STRUCTURE_SIZE, body.get(Layouts.LE_UINT16, 0));
+		Assertions.assertEquals(64 + 64, body.get(Layouts.LE_UINT16, 56)); // SecurityBufferOffset
+		Assertions.assertEquals(5, body.get(Layouts.LE_UINT16, 58)); // SecurityBufferLength
+		Assertions.assertEquals(5, body.get(Layouts.BYTE, 64 + 4));
+		Assertions.assertEquals(3, body.get(Layouts.LE_UINT16, 6)); // NegotiateContextCount
+		int contextOffset = body.get(Layouts.LE_INT32, 60) - 64;
+		Assertions.assertEquals(72, contextOffset);
+
+		long pos = contextOffset;
+		for (var expected : contexts) {
+			pos = MemorySegments.align(pos, 8);
+			var parsed = NegotiateContext.parse(body.asSlice(pos));
+			Assertions.assertEquals(expected.contextType(), parsed.contextType());
+			Assertions.assertArrayEquals(expected.data().toArray(Layouts.BYTE), parsed.data().toArray(Layouts.BYTE));
+			pos += parsed.segmentSize();
+		}
+		Assertions.assertEquals(72 + 24 + 16 + 12, pos); // no padding after last context
+		Assertions.assertEquals(pos, body.byteSize());
+	}
+
+	@Test
+	@DisplayName("keeps StructureSize if there are no variable-length fields")
+	public void testCreateEmpty() {
+		var response = NegotiateResponse.create(PacketHeader.builder().build(), new byte[0], List.of());
+
+		Assertions.assertEquals(NegotiateResponse.STRUCTURE_SIZE, response.segment().byteSize());
+		Assertions.assertEquals(0, response.segment().get(Layouts.LE_UINT16, 6));
+	}
+}
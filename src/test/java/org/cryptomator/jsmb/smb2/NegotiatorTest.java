@@ -0,0 +1,64 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.common.NTStatus;
+import org.cryptomator.jsmb.util.Layouts;
+import org.cryptomator.jsmb.util.TimerWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.time.Duration;
+
+class NegotiatorTest {
+
+	private TimerWheel timers;
+	private Negotiator negotiator;
+
+	@BeforeEach
+	public void setup() {
+		timers = TimerWheel.start("Test Timer", Duration.ofMillis(10));
+		var connection = new Connection(new Global(100, 10, timers, Duration.ofMinutes(1)), false, false);
+		negotiator = new Negotiator(null, connection);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		timers.close();
+	}
+
+	@Test
+	@DisplayName("answers SESSION_SETUP with an oversized security token with STATUS_INVALID_PARAMETER")
+	public void testOversizedToken() {
+		var token = new byte[]{0x60, (byte) 0x84, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00}; // length exceeds token
+
+		var response = negotiator.sessionSetup(sessionSetupRequest(token));
+
+		Assertions.assertInstanceOf(ErrorResponse.class, response);
+		Assertions.assertEquals(NTStatus.STATUS_INVALID_PARAMETER, response.header().status());
+	}
+
+	@Test
+	@DisplayName("answers SESSION_SETUP with a security token whose child exceeds its parent with STATUS_INVALID_PARAMETER")
+	public void testChildExceedingParent() {
+		var token = new byte[]{(byte) 0xA1, 0x04, 0x30, 0x7F, 0x00, 0x00}; // negTokenResp containing a truncated sequence
+
+		var response = negotiator.sessionSetup(sessionSetupRequest(token));
+
+		Assertions.assertInstanceOf(ErrorResponse.class, response);
+		Assertions.assertEquals(NTStatus.STATUS_INVALID_PARAMETER, response.header().status());
+	}
+
+	private static SessionSetupRequest sessionSetupRequest(byte[] token) {
+		var body = MemorySegment.ofArray(new byte[24 + token.length]);
+		body.set(Layouts.LE_UINT16, 0, (char) 25); // StructureSize
+		body.set(Layouts.LE_UINT16, 12, (char) (PacketHeader.STRUCTURE_SIZE + 24)); // SecurityBufferOffset
+		body.set(Layouts.LE_UINT16, 14, (char) token.length); // SecurityBufferLength
+		MemorySegment.copy(MemorySegment.ofArray(token), 0, body, 24, token.length);
+		var header = PacketHeader.builder();
+		header.command(Command.SESSION_SETUP.value());
+		return new SessionSetupRequest(header.build(), body);
+	}
+}
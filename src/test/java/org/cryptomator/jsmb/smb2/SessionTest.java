@@ -0,0 +1,52 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.cryptomator.jsmb.util.TimerWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+class SessionTest {
+
+	private TimerWheel timers;
+	private Global global;
+
+	@BeforeEach
+	public void setup() {
+		timers = TimerWheel.start("Test Timer", Duration.ofMillis(10));
+		global = new Global(100, 10, timers, Duration.ofMinutes(1));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		timers.close();
+	}
+
+	@Test
+	@DisplayName("closing a connection closes the sessions of its channels")
+	public void testCloseSessions() {
+		var connection = new Connection(global, false, false);
+		var session = Session.create(connection);
+		Assertions.assertEquals(1, session.channelList.size());
+		Assertions.assertSame(session, connection.sessionTable.get(session.sessionId));
+
+		connection.closeSessions();
+		Assertions.assertEquals(0, global.sessionCount());
+		Assertions.assertFalse(connection.sessionTable.containsKey(session.sessionId));
+		Assertions.assertEquals(Session.State.EXPIRED, session.state);
+	}
+
+	@Test
+	@DisplayName("expires idle sessions")
+	public void testExpiry() throws InterruptedException {
+		global = new Global(100, 10, timers, Duration.ofMillis(50));
+		var session = Session.create(new Connection(global, false, false));
+
+		Thread.sleep(500);
+		Assertions.assertEquals(Session.State.EXPIRED, session.state);
+		Assertions.assertEquals(0, global.sessionCount());
+	}
+}
@@ -0,0 +1,43 @@
+package org.cryptomator.jsmb.smb2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class TransferSizePolicyTest {
+
+	private static final int KiB = 1 << 10;
+	private static final int MiB = 1 << 20;
+
+	@ParameterizedTest(name = "{0} connections -> {1} KiB")
+	@DisplayName("divides memory budget among connections")
+	@CsvSource({
+			"1, 8192", // capped by maxTransferSize
+			"64, 8192",
+			"65, 7936", // rounded down to block size
+			"1000, 512",
+			"100000, 256", // at least one block
+	})
+	public void testTransferSize(int connections, int expectedKiB) {
+		var policy = new TransferSizePolicy(8 * MiB, 512L * MiB, 256 * KiB);
+
+		Assertions.assertEquals(expectedKiB * KiB, policy.transferSize(connections));
+	}
+
+	@Test
+	@DisplayName("transfer size is at least 64 KiB")
+	public void testMinimum() {
+		var policy = new TransferSizePolicy(8 * MiB, 0, 4 * KiB);
+
+		Assertions.assertEquals(64 * KiB, policy.transferSize(1));
+	}
+
+	@Test
+	@DisplayName("rejects transfer sizes beyond 8 MiB")
+	public void testInvalid() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TransferSizePolicy(16 * MiB, MiB, 64 * KiB));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TransferSizePolicy(MiB, MiB, 3000));
+	}
+}
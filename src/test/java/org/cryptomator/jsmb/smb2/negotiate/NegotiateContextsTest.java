@@ -0,0 +1,62 @@
+package org.cryptomator.jsmb.smb2.negotiate;
+
+import org.cryptomator.jsmb.common.NTStatus;
+import org.cryptomator.jsmb.common.NTStatusException;
+import org.cryptomator.jsmb.util.Layouts;
+import org.cryptomator.jsmb.util.MemorySegments;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+
+class NegotiateContextsTest {
+
+	@Test
+	@DisplayName("indexes contexts by type and ignores unknown types")
+	public void testParse() throws NTStatusException {
+		var segment = write(2, // start not aligned
+				EncryptionCapabilities.build(EncryptionCapabilities.AES_256_GCM),
+				PreauthIntegrityCapabilities.build(PreauthIntegrityCapabilities.HASH_ALGORITHM_SHA512, new byte[5]),
+				SigningCapabilities.build(SigningCapabilities.AES_GMAC));
+		segment.set(Layouts.LE_UINT16, 8, (char) 0x00FF); // change type of first context to an unknown one
+
+		var contexts = NegotiateContexts.parse(segment, 2, 3);
+
+		Assertions.assertNotNull(contexts.preauthIntegrityCapabilities());
+		Assertions.assertArrayEquals(new char[]{PreauthIntegrityCapabilities.HASH_ALGORITHM_SHA512}, contexts.preauthIntegrityCapabilities().hashAlgorithms());
+		Assertions.assertNotNull(contexts.signingCapabilities());
+		Assertions.assertArrayEquals(new char[]{SigningCapabilities.AES_GMAC}, contexts.signingCapabilities().signingAlgorithms());
+		Assertions.assertNull(contexts.encryptionCapabilities());
+	}
+
+	@Test
+	@DisplayName("rejects duplicate context types")
+	public void testDuplicate() {
+		var segment = write(0,
+				EncryptionCapabilities.build(EncryptionCapabilities.AES_256_GCM),
+				EncryptionCapabilities.build(EncryptionCapabilities.AES_256_GCM));
+
+		var e = Assertions.assertThrows(NTStatusException.class, () -> NegotiateContexts.parse(segment, 0, 2));
+		Assertions.assertEquals(NTStatus.STATUS_INVALID_PARAMETER, e.status);
+	}
+
+	@Test
+	@DisplayName("rejects context lists exceeding the request")
+	public void testTruncated() {
+		var segment = write(0, EncryptionCapabilities.build(EncryptionCapabilities.AES_256_GCM));
+
+		var e = Assertions.assertThrows(NTStatusException.class, () -> NegotiateContexts.parse(segment, 0, 2));
+		Assertions.assertEquals(NTStatus.STATUS_INVALID_PARAMETER, e.status);
+	}
+
+	private static MemorySegment write(long start, NegotiateContext... contexts) {
+		var segment = MemorySegment.ofArray(new byte[256]);
+		long offset = start;
+		for (var context : contexts) {
+			offset = MemorySegments.align(offset, 8);
+			offset += context.writeTo(segment, offset);
+		}
+		return segment.asSlice(0, offset);
+	}
+}
@@ -0,0 +1,56 @@
+package org.cryptomator.jsmb.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class BufferPoolTest {
+
+	@ParameterizedTest
+	@CsvSource({"0, 12", "1, 12", "4096, 12", "4097, 13", "65536, 16", "65537, 17", "16777215, 24", "16777216, 24"})
+	public void testSizeClass(long size, int expectedSizeClass) {
+		Assertions.assertEquals(expectedSizeClass, BufferPool.sizeClass(size));
+	}
+
+	@Test
+	public void testLeaseIsReused() {
+		try (var pool = new BufferPool(1 << 20)) {
+			try (var lease = pool.lease(5000)) {
+				Assertions.assertEquals(5000, lease.segment().byteSize());
+				Assertions.assertEquals(8192, pool.stats().leasedBytes());
+			}
+			Assertions.assertEquals(0, pool.stats().leasedBytes());
+			Assertions.assertEquals(8192, pool.stats().pooledBytes());
+
+			try (var lease = pool.lease(8000)) {
+				Assertions.assertEquals(8000, lease.segment().byteSize());
+			}
+			var stats = pool.stats();
+			Assertions.assertEquals(1, stats.hits());
+			Assertions.assertEquals(1, stats.misses());
+			Assertions.assertEquals(0.5, stats.hitRate());
+		}
+	}
+
+	@Test
+	public void testReleaseBeyondLimitFreesBuffer() {
+		try (var pool = new BufferPool(4096)) {
+			var lease1 = pool.lease(4096);
+			var lease2 = pool.lease(4096);
+			lease1.close();
+			lease2.close();
+			lease2.close(); // closing twice has no effect
+			Assertions.assertEquals(4096, pool.stats().pooledBytes());
+			Assertions.assertThrows(IllegalStateException.class, () -> lease2.segment().get(Layouts.BYTE, 0)); // freed
+		}
+	}
+
+	@Test
+	public void testLeaseTooLarge() {
+		try (var pool = new BufferPool(0)) {
+			Assertions.assertThrows(IllegalArgumentException.class, () -> pool.lease((1L << BufferPool.MAX_SIZE_CLASS) + 1));
+		}
+	}
+
+}
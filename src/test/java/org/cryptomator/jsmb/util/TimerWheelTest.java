@@ -0,0 +1,90 @@
+package org.cryptomator.jsmb.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+class TimerWheelTest {
+
+	private static final long TICK = 1_000_000; // 1ms
+
+	private TimerWheel timerWheel;
+	private List<Long> fired;
+	private long now;
+
+	@BeforeEach
+	public void setup() {
+		timerWheel = new TimerWheel(TICK, 0);
+		fired = new ArrayList<>();
+		now = 0;
+	}
+
+	private void advanceTicks(long ticks) {
+		for (long i = 0; i < ticks; i++) {
+			timerWheel.advance(now += TICK);
+		}
+	}
+
+	@ParameterizedTest(name = "delay of {0} ticks")
+	@ValueSource(longs = {1, 63, 64, 65, 4095, 4096, 4097, 300_000})
+	@DisplayName("fires exactly at deadline, across all levels")
+	public void testFiresAtDeadline(long ticks) {
+		timerWheel.schedule(Duration.ofNanos(ticks * TICK), () -> fired.add(now / TICK));
+
+		advanceTicks(ticks - 1);
+		Assertions.assertTrue(fired.isEmpty());
+		advanceTicks(1);
+		Assertions.assertEquals(List.of(ticks), fired);
+	}
+
+	@Test
+	@DisplayName("fires deadlines scheduled mid-rotation")
+	public void testScheduleAfterAdvance() {
+		advanceTicks(100);
+		timerWheel.schedule(Duration.ofNanos(5000 * TICK), () -> fired.add(now / TICK));
+
+		advanceTicks(5000);
+		Assertions.assertEquals(List.of(5100L), fired);
+	}
+
+	@Test
+	@DisplayName("catches up on multiple ticks at once")
+	public void testCatchUp() {
+		timerWheel.schedule(Duration.ofNanos(10 * TICK), () -> fired.add(10L));
+		timerWheel.schedule(Duration.ofNanos(200 * TICK), () -> fired.add(200L));
+
+		timerWheel.advance(1000 * TICK);
+		Assertions.assertEquals(List.of(10L, 200L), fired);
+	}
+
+	@Test
+	@DisplayName("cancelled timeouts don't fire")
+	public void testCancel() {
+		var timeout = timerWheel.schedule(Duration.ofNanos(100 * TICK), () -> fired.add(100L));
+		timerWheel.schedule(Duration.ofNanos(100 * TICK), () -> fired.add(-100L));
+
+		Assertions.assertTrue(timeout.cancel());
+		Assertions.assertFalse(timeout.cancel());
+		advanceTicks(100);
+		Assertions.assertEquals(List.of(-100L), fired);
+	}
+
+	@Test
+	@DisplayName("tasks may schedule new timeouts")
+	public void testReschedule() {
+		timerWheel.schedule(Duration.ofNanos(10 * TICK), () -> {
+			fired.add(now / TICK);
+			timerWheel.schedule(Duration.ofNanos(10 * TICK), () -> fired.add(now / TICK));
+		});
+
+		advanceTicks(20);
+		Assertions.assertEquals(List.of(10L, 20L), fired);
+	}
+}